@@ -0,0 +1,27 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler, so every
+ * result contains the allocation rate next to the throughput.
+ * Accepts the usual JMH command line options.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        var commandLine = new CommandLineOptions(args);
+        var options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the processed samples of a benchmark, JMH
+ * reports this counter as samples per second.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class SampleCounter {
+    public long samples;
+
+    /**
+     * Clears the counter before each iteration.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+        samples = 0;
+    }
+}
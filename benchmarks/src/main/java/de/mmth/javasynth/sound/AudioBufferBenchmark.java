@@ -0,0 +1,109 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import de.mmth.javasynth.benchmarks.SampleCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the synthesis hot paths.
+ * .
+ * The note is split into 25% attack, 25% sustain and
+ * 50% decay. The kernel benchmarks render one block
+ * inside the sustain and decay segment.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class AudioBufferBenchmark {
+    private static final int BLOCK_SIZE = 1024;
+
+    @Param({"8", "64", "256", "1024"})
+    int harmonicCount;
+
+    @Param({"22050", "44100", "96000"})
+    int sampleRate;
+
+    @Param({"1", "4"})
+    int noteSeconds;
+
+    @Param({"false", "true"})
+    boolean vectorized;
+
+    @Param({"DIRECT", "SPECTRAL"})
+    RenderMethod renderMethod;
+
+    private AudioBuffer audioBuffer;
+    private final double[] bus = new double[BLOCK_SIZE];
+    private int sustainSample;
+    private int decaySample;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var globals = new Globals();
+        globals.setSampleRate(sampleRate);
+        globals.setPitch(55.0);
+        globals.setAttack(0.25 * noteSeconds);
+        globals.setSustain(0.25 * noteSeconds);
+
+        var harmonics = new Harmonic[harmonicCount];
+        for (var i = 0; i < harmonics.length; i++) {
+            harmonics[i] = new Harmonic(i + 1);
+            harmonics[i].setActive(true);
+            harmonics[i].setDecay(0.5 * noteSeconds);
+        }
+
+        audioBuffer = new AudioBuffer(globals, harmonics);
+        audioBuffer.setVectorized(vectorized);
+        audioBuffer.setRenderMethod(renderMethod);
+        audioBuffer.prepare();
+        sustainSample = (int) (0.25 * noteSeconds * sampleRate) + BLOCK_SIZE;
+        decaySample = (int) (0.5 * noteSeconds * sampleRate) + BLOCK_SIZE;
+    }
+
+    @Benchmark
+    public byte[] updateBuffer(SampleCounter counter) {
+        audioBuffer.updateBuffer();
+        counter.samples += audioBuffer.getSampleCount();
+        return audioBuffer.getBuffer();
+    }
+
+    @Benchmark
+    public double[] sustainKernel(SampleCounter counter) {
+        Arrays.fill(bus, 0.0);
+        counter.samples += audioBuffer.mix(sustainSample, BLOCK_SIZE, bus, 0);
+        return bus;
+    }
+
+    @Benchmark
+    public double[] decayKernel(SampleCounter counter) {
+        Arrays.fill(bus, 0.0);
+        counter.samples += audioBuffer.mix(decaySample, BLOCK_SIZE, bus, 0);
+        return bus;
+    }
+
+    @Benchmark
+    public void updateActiveHarmonics() {
+        audioBuffer.updateActiveHarmonics();
+    }
+}
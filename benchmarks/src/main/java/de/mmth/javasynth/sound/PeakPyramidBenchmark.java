@@ -0,0 +1,73 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import de.mmth.javasynth.benchmarks.SampleCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the peak overview used by the waveform view:
+ * building the pyramid from the sample data and reading the
+ * columns of a view.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PeakPyramidBenchmark {
+    @Param({"250", "1000"})
+    int width;
+
+    @Param({"44100", "96000"})
+    int sampleRate;
+
+    @Param({"1", "20"})
+    int noteSeconds;
+
+    private byte[] buffer;
+    private PeakPyramid peaks;
+    private float[] min;
+    private float[] max;
+    private float[] rms;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        buffer = new byte[2 * sampleRate * noteSeconds];
+        new Random(42).nextBytes(buffer);
+        peaks = PeakPyramid.fromPcm16(buffer);
+        min = new float[width];
+        max = new float[width];
+        rms = new float[width];
+    }
+
+    @Benchmark
+    public PeakPyramid build(SampleCounter counter) {
+        counter.samples += buffer.length / 2;
+        return PeakPyramid.fromPcm16(buffer);
+    }
+
+    @Benchmark
+    public float[] columns() {
+        peaks.columns(0, peaks.getSampleCount(), width, min, max, rms);
+        return max;
+    }
+}
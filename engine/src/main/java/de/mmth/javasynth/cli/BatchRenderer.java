@@ -0,0 +1,238 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.cli;
+
+import de.mmth.javasynth.sound.AudioBuffer;
+import de.mmth.javasynth.sound.AudioStream;
+import de.mmth.javasynth.sound.Globals;
+import de.mmth.javasynth.sound.MidiInput;
+import de.mmth.javasynth.sound.PatchBank;
+import de.mmth.javasynth.sound.PatchSnapshot;
+import de.mmth.javasynth.sound.SampleFormat;
+import de.mmth.javasynth.sound.WavWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless command line renderer for sample libraries.
+ * .
+ * Renders every patch for every key and velocity of the
+ * given ranges into a wave file, without starting the
+ * JavaFX user interface. The notes are rendered in parallel
+ * on a fixed number of worker threads. Patches are given as
+ * properties files or preset banks (*.bank).
+ */
+public class BatchRenderer {
+    private static final String USAGE = """
+            Usage: BatchRenderer [options] (patch.properties | presets.bank)...
+              --out <dir>             output directory (default: .)
+              --keys <low>-<high>     MIDI key range (default: 21-108)
+              --velocities <v,v,...>  MIDI velocities (default: 127)
+              --threads <n>           worker threads (default: available processors)
+              --rate <hz>             sample rate, 22050 to 192000 (default: 44100)
+              --format <f>            PCM16, PCM24 or FLOAT32 (default: PCM16)
+            """;
+
+    private final List<NamedPatch> patches = new ArrayList<>();
+    private Path outDir = Path.of(".");
+    private int lowKey = 21;
+    private int highKey = 108;
+    private int[] velocities = {127};
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int sampleRate;
+    private SampleFormat sampleFormat = SampleFormat.PCM16;
+
+    public static void main(String[] args) {
+        var renderer = new BatchRenderer();
+        try {
+            renderer.parseArguments(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.out.println(e.getMessage());
+            System.out.print(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            renderer.renderAll();
+        } catch (IOException | ExecutionException e) {
+            System.out.println("Rendering failed: " + e.getMessage());
+            System.exit(2);
+        } catch (InterruptedException e) {
+            System.out.println("Rendering interrupted.");
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Reads the command line options and patch files.
+     *
+     * @param args command line arguments
+     * @throws IOException when a patch file can not be read
+     */
+    private void parseArguments(String[] args) throws IOException {
+        for (var i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out" -> outDir = Path.of(value(args, ++i));
+                case "--keys" -> {
+                    var range = value(args, ++i).split("-");
+                    lowKey = Integer.parseInt(range[0].trim());
+                    highKey = range.length > 1 ? Integer.parseInt(range[1].trim()) : lowKey;
+                }
+                case "--velocities" -> {
+                    var items = value(args, ++i).split(",");
+                    velocities = new int[items.length];
+                    for (var v = 0; v < items.length; v++) {
+                        velocities[v] = Integer.parseInt(items[v].trim());
+                    }
+                }
+                case "--threads" -> threads = Integer.parseInt(value(args, ++i));
+                case "--rate" -> sampleRate = Integer.parseInt(value(args, ++i));
+                case "--format" -> sampleFormat = SampleFormat.valueOf(value(args, ++i).toUpperCase());
+                default -> addPatches(Path.of(args[i]));
+            }
+        }
+
+        if (patches.isEmpty()) {
+            throw new IllegalArgumentException("No patch given.");
+        }
+        if ((lowKey < 0) || (highKey > 127) || (lowKey > highKey)) {
+            throw new IllegalArgumentException("Invalid key range: " + lowKey + "-" + highKey);
+        }
+        for (var velocity: velocities) {
+            if ((velocity < 1) || (velocity > 127)) {
+                throw new IllegalArgumentException("Invalid velocity: " + velocity);
+            }
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        if ((sampleRate != 0) && ((sampleRate < Globals.MIN_SAMPLE_RATE) || (sampleRate > Globals.MAX_SAMPLE_RATE))) {
+            throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+        }
+    }
+
+    /**
+     * Adds the patch of a properties file or all patches of a bank.
+     *
+     * @param file patch file or preset bank
+     * @throws IOException when the file can not be read
+     */
+    private void addPatches(Path file) throws IOException {
+        if (!file.getFileName().toString().endsWith(".bank")) {
+            var patch = new PatchProperties(file);
+            patches.add(new NamedPatch(checkName(patch.getName()), patch.createSnapshot()));
+            return;
+        }
+
+        try (var bank = PatchBank.open(file, false)) {
+            for (var i = 0; i < bank.size(); i++) {
+                patches.add(new NamedPatch(checkName(bank.getName(i)), bank.load(i)));
+            }
+        }
+    }
+
+    /**
+     * Checks that a patch name can be used as part of a file
+     * name in the output directory. Names of preset banks are
+     * read from the bank file and must not lead out of it.
+     *
+     * @param name patch name
+     * @return the checked name
+     */
+    static String checkName(String name) {
+        if (name.isEmpty() || name.contains("/") || name.contains("\\") || name.contains("..")
+                || name.contains(":") || name.indexOf('\0') >= 0) {
+            throw new IllegalArgumentException("Invalid patch name: " + name);
+        }
+
+        return name;
+    }
+
+    /**
+     * Returns the value of an option.
+     *
+     * @param args command line arguments
+     * @param index position of the value
+     * @return option value
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+
+        return args[index];
+    }
+
+    /**
+     * Renders all notes on the worker pool and reports the throughput.
+     */
+    private void renderAll() throws IOException, InterruptedException, ExecutionException {
+        Files.createDirectories(outDir);
+        long start = System.nanoTime();
+        var executor = Executors.newFixedThreadPool(threads);
+        var jobs = new ArrayList<Future<Double>>();
+        try {
+            for (var patch: patches) {
+                for (var key = lowKey; key <= highKey; key++) {
+                    for (var velocity: velocities) {
+                        var noteKey = key;
+                        jobs.add(executor.submit(() -> renderNote(patch, noteKey, velocity)));
+                    }
+                }
+            }
+
+            double audioSeconds = 0.0;
+            for (var job: jobs) {
+                audioSeconds += job.get();
+            }
+
+            var wallSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Rendered %d notes, %.1f s audio in %.1f s, real-time factor %.1f%n",
+                    jobs.size(), audioSeconds, wallSeconds, audioSeconds / wallSeconds);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Renders one note into a wave file.
+     *
+     * @param patch named patch settings
+     * @param key MIDI key number
+     * @param velocity MIDI velocity, scales the patch loudness
+     * @return length of the note in seconds
+     * @throws IOException when the file can not be written
+     */
+    private double renderNote(NamedPatch patch, int key, int velocity) throws IOException {
+        var settings = patch.snapshot();
+        var note = new PatchSnapshot(0, settings.loudness() * velocity / 127.0, settings.attack(),
+                settings.sustain(), MidiInput.keyToPitch(key), sampleRate != 0 ? sampleRate : settings.sampleRate(),
+                sampleFormat, settings.harmonics());
+        var audioBuffer = new AudioBuffer(() -> note);
+        audioBuffer.setVectorized(true);
+        audioBuffer.prepare();
+
+        var file = outDir.resolve(patch.name() + "_" + key + "_" + velocity + ".wav");
+        WavWriter.write(new AudioStream(audioBuffer), file);
+
+        return (double) audioBuffer.getSampleCount() / note.sampleRate();
+    }
+
+    /**
+     * Patch settings with the name used for the wave files.
+     *
+     * @param name patch name
+     * @param snapshot patch settings
+     */
+    private record NamedPatch(String name, PatchSnapshot snapshot) {}
+}
@@ -0,0 +1,165 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.cli;
+
+import java.util.Properties;
+
+/**
+ * Reader of flat JSON objects.
+ * .
+ * Only one object with string keys and string, number or
+ * boolean values is supported, which is all a patch needs:
+ * the keys are the keys of the patch properties files. The
+ * values are stored as text, null values are skipped.
+ */
+final class FlatJson {
+    private final String text;
+    private int pos;
+
+    private FlatJson(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parses a flat JSON object.
+     *
+     * @param text JSON text
+     * @return keys and values of the object
+     * @throws IllegalArgumentException when the text is no flat JSON object
+     */
+    static Properties parse(String text) {
+        var reader = new FlatJson(text);
+        var properties = new Properties();
+        reader.expect('{');
+        if (reader.peek() == '}') {
+            reader.pos++;
+        } else {
+            do {
+                var key = reader.readString();
+                reader.expect(':');
+                var value = reader.readValue();
+                if (value != null) {
+                    properties.setProperty(key, value);
+                }
+            } while (reader.next(',', '}') == ',');
+        }
+
+        if (reader.peek() != 0) {
+            throw reader.error("end of text");
+        }
+        return properties;
+    }
+
+    /**
+     * Reads a string, number, boolean or null value.
+     *
+     * @return value as text, null for a null value
+     */
+    private String readValue() {
+        var c = peek();
+        if (c == '"') {
+            return readString();
+        }
+
+        var start = pos;
+        while ((pos < text.length()) && ("-+.eE".indexOf(text.charAt(pos)) >= 0
+                || Character.isLetterOrDigit(text.charAt(pos)))) {
+            pos++;
+        }
+        var value = text.substring(start, pos);
+        if (value.equals("null")) {
+            return null;
+        }
+        if (value.equals("true") || value.equals("false")) {
+            return value;
+        }
+        try {
+            Double.parseDouble(value);
+            return value;
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("value");
+        }
+    }
+
+    /**
+     * Reads a string with the JSON escapes.
+     *
+     * @return string without quotes
+     */
+    private String readString() {
+        expect('"');
+        var value = new StringBuilder();
+        while (pos < text.length()) {
+            var c = text.charAt(pos++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (pos >= text.length()) {
+                break;
+            }
+
+            var escape = text.charAt(pos++);
+            switch (escape) {
+                case 'n' -> value.append('\n');
+                case 't' -> value.append('\t');
+                case 'r' -> value.append('\r');
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'u' -> {
+                    if (pos + 4 > text.length()) {
+                        throw error("unicode escape");
+                    }
+                    value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    pos += 4;
+                }
+                default -> value.append(escape);
+            }
+        }
+
+        throw error("closing quote");
+    }
+
+    /**
+     * Skips the whitespace and reads one of two expected characters.
+     *
+     * @return character read
+     */
+    private char next(char first, char second) {
+        var c = peek();
+        if ((c != first) && (c != second)) {
+            throw error("'" + first + "' or '" + second + "'");
+        }
+
+        pos++;
+        return c;
+    }
+
+    private void expect(char expected) {
+        next(expected, expected);
+    }
+
+    /**
+     * Skips the whitespace and returns the next character.
+     *
+     * @return next character, 0 at the end of the text
+     */
+    private char peek() {
+        while ((pos < text.length()) && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+
+        return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private IllegalArgumentException error(String expected) {
+        return new IllegalArgumentException("Invalid JSON at position " + pos + ", expected " + expected);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.cli;
+
+import de.mmth.javasynth.sound.PatchBank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Command line tool for preset banks.
+ * .
+ * Creates banks, appends patches from properties files
+ * and lists the index of a bank.
+ */
+public class PatchBankTool {
+    private static final String USAGE = """
+            Usage: PatchBankTool <command> <bank> [arguments]
+              create <bank> <capacity> patch.properties...  create a bank (overwrites the file)
+              add <bank> patch.properties...                append patches
+              list <bank>                                   list the patches
+            """;
+
+    public static void main(String[] args) {
+        try {
+            if (args.length < 2) {
+                throw new IllegalArgumentException("Missing command or bank.");
+            }
+
+            var bankFile = Path.of(args[1]);
+            switch (args[0]) {
+                case "create" -> {
+                    if (args.length < 3) {
+                        throw new IllegalArgumentException("Missing capacity.");
+                    }
+                    try (var bank = PatchBank.create(bankFile, Integer.parseInt(args[2]))) {
+                        addPatches(bank, args, 3);
+                    }
+                }
+                case "add" -> {
+                    try (var bank = PatchBank.open(bankFile, true)) {
+                        addPatches(bank, args, 2);
+                    }
+                }
+                case "list" -> {
+                    try (var bank = PatchBank.open(bankFile, false)) {
+                        list(bank);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown command: " + args[0]);
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println(e.getMessage());
+            System.out.print(USAGE);
+            System.exit(1);
+        } catch (IOException e) {
+            System.out.println("Patch bank failed: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Appends the patches of properties files to a bank.
+     *
+     * @param bank writable bank
+     * @param args command line arguments
+     * @param first position of the first patch file
+     * @throws IOException when a file can not be read or written
+     */
+    private static void addPatches(PatchBank bank, String[] args, int first) throws IOException {
+        for (var i = first; i < args.length; i++) {
+            var patch = new PatchProperties(Path.of(args[i]));
+            var number = bank.add(patch.getName(), patch.createSnapshot());
+            System.out.println("Added " + patch.getName() + " as patch " + number);
+        }
+    }
+
+    /**
+     * Prints the index of a bank, the patches are not loaded.
+     *
+     * @param bank bank to list
+     */
+    private static void list(PatchBank bank) {
+        System.out.printf("%d of %d patches%n", bank.size(), bank.capacity());
+        for (var i = 0; i < bank.size(); i++) {
+            System.out.printf("%5d  %-48s %d harmonics%n", i, bank.getName(i), bank.getHarmonicCount(i));
+        }
+    }
+}
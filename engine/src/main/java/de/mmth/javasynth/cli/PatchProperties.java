@@ -0,0 +1,132 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.cli;
+
+import de.mmth.javasynth.sound.EnvelopeCurve;
+import de.mmth.javasynth.sound.Globals;
+import de.mmth.javasynth.sound.Harmonic;
+import de.mmth.javasynth.sound.PatchSnapshot;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Patch stored as properties file.
+ * .
+ * Keys: harmonics (number of harmonics), loudness, attack, sustain
+ * and per harmonic n (starting with 1):
+ * harmonic.n.active (true or false), harmonic.n.loudness,
+ * harmonic.n.attack, harmonic.n.fall (to the sustain level),
+ * harmonic.n.level (sustain level), harmonic.n.decay and
+ * harmonic.n.curve (LINEAR or EXPONENTIAL). Times are given in
+ * seconds, loudness and level from 0 to 1. Missing keys keep
+ * the default values of Globals and Harmonic.
+ * .
+ * The JSON patches of the render server use the same keys
+ * in a flat object, e.g. {"harmonic.2.curve": "LINEAR"}.
+ */
+public class PatchProperties {
+    private final String name;
+    private final Properties properties = new Properties();
+
+    /**
+     * Reads the patch file, the file name without
+     * extension is the patch name.
+     *
+     * @param file patch file
+     * @throws IOException when the file can not be read
+     */
+    public PatchProperties(Path file) throws IOException {
+        var fileName = file.getFileName().toString();
+        var dot = fileName.lastIndexOf('.');
+        name = dot > 0 ? fileName.substring(0, dot) : fileName;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+    }
+
+    /**
+     * Creates a patch from properties read elsewhere,
+     * e.g. from a render request.
+     *
+     * @param name patch name
+     * @param properties patch settings
+     */
+    public PatchProperties(String name, Properties properties) {
+        this.name = name;
+        this.properties.putAll(properties);
+    }
+
+    /**
+     * Returns the patch name.
+     *
+     * @return file name without extension
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a new globals object with the patch settings.
+     *
+     * @return global settings
+     */
+    public Globals createGlobals() {
+        var globals = new Globals();
+        globals.setLoudness(getDouble("loudness", globals.getLoudness()));
+        globals.setAttack(getDouble("attack", globals.getAttack()));
+        globals.setSustain(getDouble("sustain", globals.getSustain()));
+        return globals;
+    }
+
+    /**
+     * Creates new harmonic objects with the patch settings.
+     *
+     * @return harmonics settings
+     */
+    public Harmonic[] createHarmonics() {
+        var harmonics = new Harmonic[(int) getDouble("harmonics", 8)];
+        for (var i = 0; i < harmonics.length; i++) {
+            var h = new Harmonic(i + 1);
+            var prefix = "harmonic." + (i + 1) + ".";
+            h.setActive(Boolean.parseBoolean(properties.getProperty(prefix + "active", Boolean.toString(h.getActive()))));
+            h.setLoudness(getDouble(prefix + "loudness", h.getLoudness()));
+            h.setDecay(getDouble(prefix + "decay", h.getDecay()));
+            h.setAttack(getDouble(prefix + "attack", h.getAttack()));
+            h.setFall(getDouble(prefix + "fall", h.getFall()));
+            h.setSustainLevel(getDouble(prefix + "level", h.getSustainLevel()));
+            h.setCurve(EnvelopeCurve.valueOf(properties.getProperty(prefix + "curve", h.getCurve().name()).trim()));
+            harmonics[i] = h;
+        }
+
+        return harmonics;
+    }
+
+    /**
+     * Creates the snapshot of the patch settings,
+     * e.g. to store it in a preset bank.
+     *
+     * @return immutable patch settings, version 0
+     */
+    public PatchSnapshot createSnapshot() {
+        return PatchSnapshot.of(0, createGlobals(), createHarmonics());
+    }
+
+    /**
+     * Reads a numeric property.
+     *
+     * @param key property key
+     * @param defaultValue value when the key is missing
+     * @return property value
+     */
+    private double getDouble(String key, double defaultValue) {
+        var value = properties.getProperty(key);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+}
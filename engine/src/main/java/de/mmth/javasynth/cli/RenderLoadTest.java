@@ -0,0 +1,235 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.cli;
+
+import de.mmth.javasynth.sound.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local load generator of the render server.
+ * .
+ * A number of clients, each on its own virtual thread, post
+ * the same patch with changing keys for a fixed time and read
+ * the streamed notes. The throughput is reported in notes and
+ * in rendered audio seconds per second, the time to the first
+ * byte shows that the notes are streamed while rendering.
+ * Without --url an embedded server is started on a free port.
+ */
+public class RenderLoadTest {
+    private static final String USAGE = """
+            Usage: RenderLoadTest [options] [patch.properties]
+              --url <url>      render server (default: embedded server)
+              --clients <n>    concurrent clients (default: 8)
+              --seconds <n>    test duration (default: 10)
+              --renders <n>    concurrent renders of the embedded server (default: available processors)
+              --harmonics <n>  active harmonics without patch file (default: 64)
+            """;
+
+    private String url;
+    private int clients = 8;
+    private int seconds = 10;
+    private int renders = Runtime.getRuntime().availableProcessors();
+    private int harmonics = 64;
+    private Properties patch;
+
+    private final LatencyHistogram firstByte = new LatencyHistogram();
+    private final LatencyHistogram complete = new LatencyHistogram();
+    private final AtomicLong notes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong audioMillis = new AtomicLong();
+
+    public static void main(String[] args) {
+        var loadTest = new RenderLoadTest();
+        try {
+            loadTest.parseArguments(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.out.println(e.getMessage());
+            System.out.print(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            loadTest.run();
+        } catch (IOException e) {
+            System.out.println("Load test failed: " + e.getMessage());
+            System.exit(2);
+        } catch (InterruptedException e) {
+            System.out.println("Load test interrupted.");
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Reads the command line options and the patch file.
+     *
+     * @param args command line arguments
+     * @throws IOException when the patch file can not be read
+     */
+    private void parseArguments(String[] args) throws IOException {
+        for (var i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url" -> url = value(args, ++i);
+                case "--clients" -> clients = Integer.parseInt(value(args, ++i));
+                case "--seconds" -> seconds = Integer.parseInt(value(args, ++i));
+                case "--renders" -> renders = Integer.parseInt(value(args, ++i));
+                case "--harmonics" -> harmonics = Integer.parseInt(value(args, ++i));
+                default -> {
+                    patch = new Properties();
+                    try (var reader = Files.newBufferedReader(Path.of(args[i]))) {
+                        patch.load(reader);
+                    }
+                }
+            }
+        }
+
+        if ((clients < 1) || (seconds < 1) || (harmonics < 1)) {
+            throw new IllegalArgumentException("Clients, seconds and harmonics must be positive.");
+        }
+        if (patch == null) {
+            patch = new Properties();
+            patch.setProperty("harmonics", Integer.toString(harmonics));
+            for (var n = 1; n <= harmonics; n++) {
+                patch.setProperty("harmonic." + n + ".active", "true");
+                patch.setProperty("harmonic." + n + ".loudness", Double.toString(1.0 / n));
+            }
+        }
+    }
+
+    /**
+     * Returns the value of an option.
+     *
+     * @param args command line arguments
+     * @param index position of the value
+     * @return option value
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+
+        return args[index];
+    }
+
+    /**
+     * Runs the clients and prints the results.
+     */
+    private void run() throws IOException, InterruptedException {
+        RenderServer server = null;
+        if (url == null) {
+            server = new RenderServer(0, renders);
+            server.start();
+            url = "http://localhost:" + server.getPort() + "/render";
+        }
+
+        var body = toJson(patch);
+        var client = HttpClient.newHttpClient();
+        var end = System.nanoTime() + seconds * 1_000_000_000L;
+        var start = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var c = 0; c < clients; c++) {
+                var first = c;
+                executor.execute(() -> {
+                    for (var i = first; System.nanoTime() < end; i += clients) {
+                        try {
+                            renderNote(client, body, 36 + i % 60);
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+            }
+        }
+        var wallSeconds = (System.nanoTime() - start) / 1e9;
+        if (server != null) {
+            server.stop();
+        }
+
+        System.out.printf("%d clients, %d notes, %d errors in %.1f s%n", clients, notes.get(), errors.get(), wallSeconds);
+        System.out.printf("%.1f notes/s, %.1f MB/s, %.1f s audio per second%n", notes.get() / wallSeconds,
+                bytes.get() / wallSeconds / 1e6, audioMillis.get() / 1000.0 / wallSeconds);
+        System.out.println("first byte " + firstByte);
+        System.out.println("complete   " + complete);
+    }
+
+    /**
+     * Requests one note and reads the streamed response.
+     *
+     * @param client HTTP client
+     * @param body patch as JSON
+     * @param key MIDI key number
+     */
+    private void renderNote(HttpClient client, String body, int key) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create(url + "?key=" + key + "&output=pcm"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        var start = System.nanoTime();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (var in = response.body()) {
+            if (response.statusCode() != 200) {
+                errors.incrementAndGet();
+                in.readAllBytes();
+                return;
+            }
+
+            var buffer = new byte[65536];
+            var length = in.read(buffer);
+            firstByte.record(System.nanoTime() - start);
+            long total = 0;
+            while (length >= 0) {
+                total += length;
+                length = in.read(buffer);
+            }
+            complete.record(System.nanoTime() - start);
+            notes.incrementAndGet();
+            bytes.addAndGet(total);
+            var rate = Integer.parseInt(response.headers().firstValue("X-Sample-Rate").orElse("44100"));
+            var noteFrames = Long.parseLong(response.headers().firstValue("X-Frames").orElse("0"));
+            audioMillis.addAndGet(noteFrames * 1000 / rate);
+        }
+    }
+
+    /**
+     * Converts the patch properties into a flat JSON object.
+     *
+     * @param properties patch settings
+     * @return JSON text
+     */
+    private static String toJson(Properties properties) {
+        var json = new StringBuilder("{");
+        for (var name: properties.stringPropertyNames()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(escape(name)).append("\":\"").append(escape(properties.getProperty(name))).append('"');
+        }
+
+        return json.append('}').toString();
+    }
+
+    /**
+     * Escapes quotes and backslashes of a JSON string.
+     *
+     * @param text string content
+     * @return escaped content
+     */
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,402 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.cli;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.mmth.javasynth.sound.AudioBuffer;
+import de.mmth.javasynth.sound.AudioStream;
+import de.mmth.javasynth.sound.Globals;
+import de.mmth.javasynth.sound.MidiInput;
+import de.mmth.javasynth.sound.PatchBank;
+import de.mmth.javasynth.sound.PatchSnapshot;
+import de.mmth.javasynth.sound.SampleFormat;
+import de.mmth.javasynth.sound.WavWriter;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP render service.
+ * .
+ * POST /render with a patch in the body renders one note and
+ * streams it back while rendering, with chunked transfer encoding.
+ * The patch is a flat JSON object with the keys of the patch
+ * properties files (Content-Type application/json) or a record of
+ * the binary patch format (application/octet-stream). The query
+ * parameters select the note and the output:
+ * pitch (hertz, harmonic n sounds at n * pitch / 2) or key
+ * (MIDI key number, sounding at its equal tempered frequency),
+ * velocity (1 to 127),
+ * rate (sample rate), format (PCM16, PCM24, FLOAT32) and
+ * output (wav or pcm, raw little endian samples).
+ * .
+ * Each request runs on its own virtual thread. The renders are
+ * bounded by a semaphore, requests wait up to QUEUE_TIMEOUT_SECONDS
+ * for a free render slot and are rejected with 503 afterwards.
+ * Invalid requests are rejected with 400 before they wait.
+ */
+public class RenderServer {
+    public static final int DEFAULT_PORT = 8090;
+    public static final int MAX_NOTE_SECONDS = 120;
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_HARMONICS = 65536;
+    private static final long QUEUE_TIMEOUT_SECONDS = 30;
+    private static final String USAGE = """
+            Usage: RenderServer [options]
+              --port <n>     TCP port (default: 8090)
+              --renders <n>  concurrent renders (default: available processors)
+            """;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore renders;
+    private final long queueTimeoutMillis;
+    private final AtomicLong notes = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates the server on the loopback interface.
+     *
+     * @param port TCP port, 0 for any free port
+     * @param maxRenders maximum number of concurrent renders
+     * @throws IOException when the port can not be opened
+     */
+    public RenderServer(int port, int maxRenders) throws IOException {
+        this(port, createRenderSlots(maxRenders), TimeUnit.SECONDS.toMillis(QUEUE_TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Creates the server with given render slots and wait
+     * for a free slot, e.g. for tests.
+     *
+     * @param port TCP port, 0 for any free port
+     * @param renders semaphore with one permit per concurrent render
+     * @param queueTimeoutMillis maximum wait for a render slot
+     * @throws IOException when the port can not be opened
+     */
+    RenderServer(int port, Semaphore renders, long queueTimeoutMillis) throws IOException {
+        this.renders = renders;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/render", this::handleRender);
+    }
+
+    /**
+     * Creates the semaphore which bounds the renders.
+     *
+     * @param maxRenders maximum number of concurrent renders
+     * @return fair semaphore with one permit per render
+     */
+    private static Semaphore createRenderSlots(int maxRenders) {
+        if (maxRenders < 1) {
+            throw new IllegalArgumentException("Render count out of range: " + maxRenders);
+        }
+
+        return new Semaphore(maxRenders, true);
+    }
+
+    public static void main(String[] args) {
+        var port = DEFAULT_PORT;
+        var maxRenders = Runtime.getRuntime().availableProcessors();
+        try {
+            for (var i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(value(args, ++i));
+                    case "--renders" -> maxRenders = Integer.parseInt(value(args, ++i));
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.print(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            var renderServer = new RenderServer(port, maxRenders);
+            renderServer.start();
+            System.out.println("Render server listening on http://localhost:" + renderServer.getPort()
+                    + "/render, " + maxRenders + " concurrent renders");
+        } catch (IOException e) {
+            System.out.println("Render server failed: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, running renders are aborted.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return TCP port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the number of notes rendered so far.
+     *
+     * @return rendered notes
+     */
+    public long getNotes() {
+        return notes.get();
+    }
+
+    /**
+     * Returns the number of requests rejected because
+     * no render slot became free in time.
+     *
+     * @return rejected requests
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Handles one render request on its virtual thread.
+     *
+     * @param exchange HTTP request and response
+     * @throws IOException when the response can not be written
+     */
+    private void handleRender(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendError(exchange, 405, "Use POST with a patch in the body.");
+                return;
+            }
+
+            // all request errors are answered before a render slot is taken
+            String output;
+            PatchSnapshot note;
+            try {
+                var query = parseQuery(exchange.getRequestURI().getRawQuery());
+                output = query.getOrDefault("output", "wav");
+                if (!output.equals("wav") && !output.equals("pcm")) {
+                    throw new IllegalArgumentException("Unknown output: " + output);
+                }
+                note = readNote(exchange, query);
+            } catch (IllegalArgumentException | IOException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+
+            if (!renders.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                sendError(exchange, 503, "All render slots are busy.");
+                return;
+            }
+            try {
+                streamNote(exchange, note, output);
+            } finally {
+                renders.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the patch of the request body and applies
+     * the note parameters of the query.
+     *
+     * @param exchange HTTP request
+     * @param query query parameters
+     * @return settings of the note
+     * @throws IOException when the body can not be read or is no patch
+     */
+    private static PatchSnapshot readNote(HttpExchange exchange, Map<String, String> query) throws IOException {
+        var body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Patch too large.");
+        }
+
+        var contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        PatchSnapshot patch;
+        if ((contentType != null) && contentType.startsWith("application/octet-stream")) {
+            try {
+                patch = PatchBank.decode(ByteBuffer.wrap(body));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Corrupt patch record: " + e.getMessage());
+            }
+            checkHarmonics(patch.harmonics().size());
+        } else {
+            var properties = FlatJson.parse(new String(body, StandardCharsets.UTF_8));
+            checkHarmonics(Double.parseDouble(properties.getProperty("harmonics", "8")));
+            patch = new PatchProperties("request", properties).createSnapshot();
+        }
+        if (!(patch.attack() >= 0.0) || !(patch.sustain() >= 0.0)) {
+            throw new IllegalArgumentException("Attack and sustain must not be negative.");
+        }
+
+        var pitch = patch.pitch();
+        if (query.containsKey("key")) {
+            var key = Integer.parseInt(query.get("key"));
+            if ((key < 0) || (key > 127)) {
+                throw new IllegalArgumentException("Key out of range: " + key);
+            }
+            pitch = MidiInput.keyToPitch(key);
+        }
+        if (query.containsKey("pitch")) {
+            pitch = Double.parseDouble(query.get("pitch"));
+        }
+        var velocity = Integer.parseInt(query.getOrDefault("velocity", "127"));
+        if ((velocity < 1) || (velocity > 127)) {
+            throw new IllegalArgumentException("Velocity out of range: " + velocity);
+        }
+        var sampleRate = query.containsKey("rate") ? Integer.parseInt(query.get("rate")) : patch.sampleRate();
+        if ((sampleRate < Globals.MIN_SAMPLE_RATE) || (sampleRate > Globals.MAX_SAMPLE_RATE)) {
+            throw new IllegalArgumentException("Sample rate out of range: " + sampleRate);
+        }
+        var sampleFormat = query.containsKey("format")
+                ? SampleFormat.valueOf(query.get("format").toUpperCase()) : patch.sampleFormat();
+        if (!(pitch > 0.0)) {
+            throw new IllegalArgumentException("Pitch out of range: " + pitch);
+        }
+
+        var seconds = patch.attack() + patch.sustain();
+        var harmonics = patch.harmonics();
+        var decay = 0.0;
+        for (var i = 0; i < harmonics.size(); i++) {
+            decay = Math.max(decay, harmonics.decay(i));
+        }
+        if (!(seconds + decay <= MAX_NOTE_SECONDS)) {
+            throw new IllegalArgumentException("Note longer than " + MAX_NOTE_SECONDS + " seconds.");
+        }
+
+        return new PatchSnapshot(0, patch.loudness() * velocity / 127.0, patch.attack(), patch.sustain(),
+                pitch, sampleRate, sampleFormat, patch.harmonics());
+    }
+
+    /**
+     * Checks the number of harmonics of a patch.
+     *
+     * @param harmonics harmonics count
+     */
+    private static void checkHarmonics(double harmonics) {
+        if (!(harmonics >= 1) || (harmonics > MAX_HARMONICS)) {
+            throw new IllegalArgumentException("Harmonics count out of range: " + harmonics);
+        }
+    }
+
+    /**
+     * Renders the note block by block into the response body.
+     *
+     * @param exchange HTTP request and response
+     * @param note settings of the note
+     * @param output wav or pcm, checked by the caller
+     * @throws IOException when the response can not be written
+     */
+    private void streamNote(HttpExchange exchange, PatchSnapshot note, String output) throws IOException {
+        var audioBuffer = new AudioBuffer(() -> note);
+        audioBuffer.setVectorized(true);
+        audioBuffer.prepare();
+        var sampleCount = audioBuffer.getSampleCount();
+        var stream = new AudioStream(audioBuffer);
+        var format = stream.getFormat();
+        var dataSize = (long) sampleCount * format.getFrameSize();
+        var headers = exchange.getResponseHeaders();
+        headers.set("X-Sample-Rate", Integer.toString(note.sampleRate()));
+        headers.set("X-Sample-Format", note.sampleFormat().name());
+        headers.set("X-Frames", Integer.toString(sampleCount));
+        headers.set("Content-Type", output.equals("pcm") ? "application/octet-stream" : "audio/wav");
+
+        // length 0 selects the chunked transfer encoding
+        exchange.sendResponseHeaders(200, 0);
+        try (var out = exchange.getResponseBody()) {
+            if (output.equals("wav")) {
+                WavWriter.write(stream, dataSize, out);
+            } else {
+                var block = new byte[16384 * format.getFrameSize()];
+                int length;
+                while ((length = stream.read(block)) > 0) {
+                    out.write(block, 0, length);
+                }
+            }
+        }
+        notes.incrementAndGet();
+    }
+
+    /**
+     * Sends an error response with a text message.
+     *
+     * @param exchange HTTP request and response
+     * @param status HTTP status code
+     * @param message error message
+     * @throws IOException when the response can not be written
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        var text = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, text.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(text);
+        }
+    }
+
+    /**
+     * Splits the query string into decoded parameters.
+     *
+     * @param rawQuery query string of the request URI, may be null
+     * @return parameter names and values
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        var query = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return query;
+        }
+
+        for (var parameter: rawQuery.split("&")) {
+            var equals = parameter.indexOf('=');
+            var name = equals < 0 ? parameter : parameter.substring(0, equals);
+            var value = equals < 0 ? "" : parameter.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+
+        return query;
+    }
+
+    /**
+     * Returns the value of an option.
+     *
+     * @param args command line arguments
+     * @param index position of the value
+     * @return option value
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+
+        return args[index];
+    }
+}
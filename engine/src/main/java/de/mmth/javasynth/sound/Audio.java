@@ -0,0 +1,315 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import javax.sound.sampled.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Performs the audio output.
+ *
+ * Needs a private player thread. Audio output in the
+ * main message thread does not work.
+ * .
+ * The user interface sends play, stream and stop commands
+ * through a bounded queue. The player thread blocks on the
+ * queue and wakes up as soon as a command arrives, a running
+ * stream ends when the next command is waiting. The time
+ * from the request to the first audible frame is measured
+ * for each sound.
+ * .
+ * Both outputs write into a source data line without
+ * intermediate copies: a rendered note is written slice by
+ * slice from its buffer, a stream is rendered into one block
+ * which is reused for all blocks and streams of the same size.
+ * The steady-state streaming loop allocates nothing, the bytes
+ * allocated per block are recorded in the telemetry.
+ */
+public class Audio extends Thread {
+    private static final int MIN_BLOCK_FRAMES = 64;
+    private static final int MAX_BLOCK_FRAMES = 1024;
+    private static final int LINE_BUFFER_BLOCKS = 4;
+    private static final int COMMAND_QUEUE_SIZE = 16;
+
+    private final BlockingQueue<AudioCommand> commands = new ArrayBlockingQueue<>(COMMAND_QUEUE_SIZE);
+    private volatile BlockSource activeSource;
+    private volatile long lastLatency = -1;
+    private volatile Telemetry telemetry = new Telemetry();
+    private int blockFrames = 512;
+    private byte[] block = new byte[0];
+
+    /**
+     * Waits for commands and plays the audio buffer,
+     * streams the block source or stops playing.
+     */
+    @Override
+    public void run() {
+        System.out.println("Player thread started.");
+        try {
+            while (!this.isInterrupted()) {
+                execute(commands.take());
+            }
+        } catch (InterruptedException e) {
+            System.out.println("Player thread interrupted.");
+        }
+
+        System.out.println("Player thread terminated.");
+    }
+
+    /**
+     * Starts the output of the given audio buffer.
+     *
+     * @param buffer sound to play
+     */
+    public void playAudioBuffer(AudioBuffer buffer) {
+        playAudioBuffer(buffer, System.nanoTime());
+    }
+
+    /**
+     * Starts the output of the given audio buffer which was
+     * requested earlier, e.g. before a background render. The
+     * latency is measured from the request time.
+     *
+     * @param buffer sound to play
+     * @param requestTime System.nanoTime() of the request
+     */
+    public void playAudioBuffer(AudioBuffer buffer, long requestTime) {
+        send(AudioCommand.play(buffer, requestTime));
+    }
+
+    /**
+     * Starts the streaming output of the given block source.
+     * A running stream is replaced by the new one.
+     *
+     * @param source sound to stream
+     */
+    public void streamAudio(BlockSource source) {
+        send(AudioCommand.stream(source));
+    }
+
+    /**
+     * Checks if the given block source is streamed right now.
+     *
+     * @param source block source to check
+     * @return true while the source is streamed
+     */
+    public boolean isStreaming(BlockSource source) {
+        return activeSource == source;
+    }
+
+    /**
+     * Sets the number of frames rendered per streaming block.
+     * Smaller blocks reduce the time to the first sound, larger
+     * blocks reduce the risk of buffer underruns.
+     *
+     * @param blockFrames frames per block in the range from 64 to 1024
+     */
+    public void setBlockFrames(int blockFrames) {
+        if ((blockFrames < MIN_BLOCK_FRAMES) || (blockFrames > MAX_BLOCK_FRAMES)) {
+            throw new IllegalArgumentException("Block size out of range: " + blockFrames);
+        }
+
+        this.blockFrames = blockFrames;
+    }
+
+    /**
+     * Stops the player.
+     */
+    public void stopPlayer() {
+        send(AudioCommand.stop());
+    }
+
+    /**
+     * Sets the metrics which receive the block timing,
+     * the underruns and the latency of the output.
+     *
+     * @param telemetry destination of the metrics
+     */
+    public void setTelemetry(Telemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Returns the time from the last play or stream request
+     * to its first audible frame.
+     *
+     * @return latency in milliseconds, -1 before the first sound
+     */
+    public double getLastLatency() {
+        var latency = lastLatency;
+        return latency < 0 ? -1.0 : latency / 1_000_000.0;
+    }
+
+    /**
+     * Plays the given audio buffer in the private thread.
+     * Returns when the buffer is played, the player is stopped
+     * or another command is waiting.
+     *
+     * @param buffer sound to play
+     */
+    public void play(AudioBuffer buffer) {
+        play(buffer, System.nanoTime());
+    }
+
+    /**
+     * Streams the given block source into a source data line
+     * in the private thread. Returns when the source is exhausted,
+     * the player is stopped or another command is waiting.
+     *
+     * @param source sound to stream
+     */
+    public void stream(BlockSource source) {
+        stream(source, System.nanoTime());
+    }
+
+    /**
+     * Queues a command for the player thread. The user
+     * interface thread is never blocked, a command is
+     * dropped when the queue is full.
+     *
+     * @param command player command
+     */
+    private void send(AudioCommand command) {
+        if (!commands.offer(command)) {
+            System.out.println("Player busy, command dropped: " + command.kind());
+        }
+    }
+
+    /**
+     * Executes one command in the player thread.
+     *
+     * @param command player command
+     */
+    private void execute(AudioCommand command) {
+        switch (command.kind()) {
+            case PLAY -> play(command.buffer(), command.requestTime());
+            case STREAM -> stream(command.source(), command.requestTime());
+            case STOP -> {
+                // the running output has already ended because this command was waiting
+            }
+        }
+    }
+
+    /**
+     * Adds a listener which measures the latency from the
+     * request to the start of the output of the line.
+     *
+     * @param line output line
+     * @param requestTime System.nanoTime() of the request
+     */
+    private void measureLatency(Line line, long requestTime) {
+        line.addLineListener(event -> {
+            if (event.getType() == LineEvent.Type.START) {
+                lastLatency = System.nanoTime() - requestTime;
+                telemetry.recordLatency(lastLatency);
+            }
+        });
+    }
+
+    /**
+     * Writes the rendered audio buffer slice by slice into a
+     * source data line. Unlike a clip, which copies the whole
+     * buffer when it is opened, the line reads the rendered data
+     * in place. Returns when the buffer is played, the player
+     * is stopped or another command is waiting.
+     *
+     * @param buffer sound to play
+     * @param requestTime System.nanoTime() of the request
+     */
+    private void play(AudioBuffer buffer, long requestTime) {
+        var format = buffer.getFormat();
+        var data = buffer.getBuffer();
+        var sliceLength = blockFrames * format.getFrameSize();
+
+        try (var line = AudioSystem.getSourceDataLine(format)) {
+            line.open(format, LINE_BUFFER_BLOCKS * sliceLength);
+            measureLatency(line, requestTime);
+            line.start();
+
+            var offset = 0;
+            while ((offset < data.length) && commands.isEmpty() && !isInterrupted()) {
+                var length = Math.min(sliceLength, data.length - offset);
+                line.write(data, offset, length);
+                offset += length;
+            }
+
+            if (offset == data.length) {
+                line.drain();
+            }
+            line.stop();
+        } catch (LineUnavailableException e) {
+            System.out.println("Line unavailable, player stopped.");
+        }
+    }
+
+    /**
+     * Streams the given block source into a source data line
+     * in the private thread. Returns when the source is exhausted,
+     * the player is stopped or another command is waiting.
+     *
+     * @param source sound to stream
+     * @param requestTime System.nanoTime() of the request
+     */
+    private void stream(BlockSource source, long requestTime) {
+        var format = source.getFormat();
+        var blockLength = blockFrames * format.getFrameSize();
+        if (block.length != blockLength) {
+            block = new byte[blockLength];
+        }
+
+        try (var line = AudioSystem.getSourceDataLine(format)) {
+            line.open(format, LINE_BUFFER_BLOCKS * block.length);
+            measureLatency(line, requestTime);
+            line.start();
+            activeSource = source;
+
+            var length = readBlock(source, block);
+            var started = false;
+            while ((length > 0) && commands.isEmpty() && !isInterrupted()) {
+                if (started && (line.available() >= line.getBufferSize())) {
+                    telemetry.recordUnderrun();
+                }
+                line.write(block, 0, length);
+                started = true;
+                length = readBlock(source, block);
+            }
+
+            if (length == 0) {
+                line.drain();
+            }
+            line.stop();
+        } catch (LineUnavailableException e) {
+            System.out.println("Line unavailable, player stopped.");
+        } finally {
+            activeSource = null;
+        }
+    }
+
+    /**
+     * Reads the next block from the source and records
+     * the render time and the allocated bytes of the block.
+     *
+     * @param source sound to stream
+     * @param block destination buffer
+     * @return number of bytes read
+     */
+    private int readBlock(BlockSource source, byte[] block) {
+        var format = source.getFormat();
+        var start = System.nanoTime();
+        var allocated = Telemetry.threadAllocatedBytes();
+        var length = source.read(block);
+        if (length > 0) {
+            var nanos = System.nanoTime() - start;
+            if (allocated >= 0) {
+                allocated = Telemetry.threadAllocatedBytes() - allocated;
+            }
+            telemetry.recordBlock(nanos, length / format.getFrameSize(), (int) format.getSampleRate(), allocated);
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,1283 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Calculates the audio byte buffer from the global
+ * and harmonics parameters.
+ * .
+ * The parameters are read as immutable snapshot when a note
+ * is prepared. While a note is streamed, changes of the global
+ * and harmonics loudness are taken over at block boundaries and
+ * cross faded within the block.
+ * .
+ * Harmonics above the Nyquist frequency or below the cull
+ * threshold are not rendered. The rendered harmonics are sorted
+ * by their decay time, so the harmonics with a finished decay
+ * are skipped block by block.
+ * .
+ * The global envelope (attack ramp, sustain, decay) is applied
+ * per sample, the envelope of each harmonic is advanced by the
+ * envelope bank within the harmonics sum.
+ * .
+ * Notes with many partials are rendered with the spectral
+ * engine instead of the oscillators, see RenderMethod.
+ */
+public class AudioBuffer {
+    private static final int MIX_BLOCK_SIZE = 4096;
+    private static final int PARALLEL_CHUNK_SIZE = 8 * OscillatorBank.RESEED_INTERVAL;
+    private static final boolean VECTOR_API_AVAILABLE = checkVectorApi();
+    public static final double DEFAULT_CULL_THRESHOLD = -90.0;
+    public static final int SPECTRAL_MIN_PARTIALS = 128;
+    public static final int MAX_HOLD_SECONDS = 60;
+    private static final double MIN_SEGMENT = 0.01;
+
+    private final Supplier<PatchSnapshot> patchSource;
+    private PatchSnapshot patch;
+    private AudioFormat format;
+    private SampleFormat sampleFormat;
+    private byte[] buffer = new byte[0];
+    private boolean bufferShared;
+    private PeakPyramid peaks;
+    private int[] activeIndex = new int[0];
+    private int sampleCount;
+    private int attackLength;
+    private int sustainLength;
+    private double decayLength;
+    private double loudness;
+    private double deltaLoudness;
+    private double attackOffset;
+    private double deltaTime;
+    private double[] deltas = new double[0];
+    private double[] harmonicLoudness = new double[0];
+    private double[] harmonicDecay = new double[0];
+    private int harmonicCount;
+    private boolean vectorized;
+    private final OscillatorBank bank = new OscillatorBank();
+    private final EnvelopeBank envelopes = new EnvelopeBank();
+    private final SpectralEngine spectralEngine = new SpectralEngine();
+    private RenderMethod renderMethod = RenderMethod.AUTO;
+    private boolean spectral;
+    private final double[] mixBlock = new double[MIX_BLOCK_SIZE];
+    private boolean parallel;
+    private boolean incremental;
+    private double cullThreshold = Math.pow(10.0, DEFAULT_CULL_THRESHOLD / 20.0);
+    private double pitch;
+    private double[] stemSum = new double[0];
+    private double[] stemLayout = new double[0];
+    private boolean[] stemActive;
+    private HarmonicBank stemBank;
+    private PatchSnapshot livePatch;
+    private Telemetry telemetry = new Telemetry();
+    private double[] fadeOld = new double[0];
+    private double[] fadeNew = new double[0];
+    private BooleanSupplier cancelled = () -> false;
+
+    /**
+     * Constructor gets the parameter lists injected.
+     * The parameters are copied on each prepare, changes
+     * while a note is rendered are not taken over.
+     *
+     * @param globals global parameter
+     * @param harmonics array of harmonics parameters
+     */
+    public AudioBuffer(Globals globals, Harmonic[] harmonics) {
+        this(() -> PatchSnapshot.of(0, globals, harmonics));
+    }
+
+    /**
+     * Constructor gets the source of the parameter snapshots
+     * injected, usually a parameter store.
+     *
+     * @param patchSource supplies the latest patch snapshot
+     */
+    public AudioBuffer(Supplier<PatchSnapshot> patchSource) {
+        this.patchSource = patchSource;
+        this.patch = patchSource.get();
+        sampleFormat = patch.sampleFormat();
+        format = sampleFormat.createFormat(patch.sampleRate());
+    }
+
+    /**
+     * Returns the active byte buffer.
+     * @return audio data
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Hands out the active byte buffer for sharing, e.g. with
+     * the render cache. The next update renders into a new buffer.
+     *
+     * @return audio data, must not be modified
+     */
+    public byte[] shareBuffer() {
+        bufferShared = true;
+        return buffer;
+    }
+
+    /**
+     * Replaces the active byte buffer by an already rendered one.
+     *
+     * @param data shared audio data, must not be modified
+     */
+    public void setBuffer(byte[] data) {
+        buffer = data;
+        bufferShared = true;
+        peaks = null;
+    }
+
+    /**
+     * Returns the peak overview of the active byte buffer,
+     * built on the first call after each update.
+     *
+     * @return peak pyramid
+     */
+    public PeakPyramid getPeaks() {
+        if (peaks == null) {
+            peaks = PeakPyramid.of(buffer, sampleFormat);
+        }
+
+        return peaks;
+    }
+
+    /**
+     * Returns the specified audio format.
+     *
+     * @return audio format
+     */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Recalculates the audio byte buffer.
+     */
+    public void updateBuffer() {
+        updateBuffer(patchSource.get(), () -> false);
+    }
+
+    /**
+     * Recalculates the audio byte buffer from the given snapshot,
+     * e.g. in a background thread. The cancel condition is checked
+     * between chunks, a cancelled update stops with a
+     * CancellationException and leaves an invalid buffer.
+     *
+     * @param snapshot patch settings
+     * @param cancelled returns true when the result is no longer needed
+     */
+    public void updateBuffer(PatchSnapshot snapshot, BooleanSupplier cancelled) {
+        long start = System.nanoTime();
+        long allocated = Telemetry.threadAllocatedBytes();
+        this.cancelled = cancelled;
+        prepare(snapshot, snapshot.pitch());
+        peaks = null;
+
+        var byteCount = sampleFormat.getBytes() * sampleCount;
+        if (bufferShared || (buffer.length != byteCount)) {
+            buffer = new byte[byteCount];
+            bufferShared = false;
+        }
+
+        if (incremental) {
+            updateStems();
+            renderStems();
+        } else if (parallel && (sampleCount >= 2 * PARALLEL_CHUNK_SIZE)) {
+            ForkJoinPool.commonPool().invoke(new RenderTask(0, sampleCount, null));
+        } else {
+            for (var first = 0; first < sampleCount; first += PARALLEL_CHUNK_SIZE) {
+                checkCancelled();
+                render(first, PARALLEL_CHUNK_SIZE, buffer, sampleFormat.getBytes() * first);
+            }
+        }
+        long done = System.nanoTime();
+        if (allocated >= 0) {
+            allocated = Telemetry.threadAllocatedBytes() - allocated;
+        }
+        telemetry.recordRender(done - start, sampleCount, patch.sampleRate(), allocated);
+        telemetry.setActivePartials(harmonicCount);
+    }
+
+    /**
+     * Stops a running updateBuffer when its result is no longer needed.
+     */
+    private void checkCancelled() {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Render cancelled");
+        }
+    }
+
+    /**
+     * Sets the metrics which record the timing of updateBuffer.
+     *
+     * @param telemetry destination of the metrics
+     */
+    public void setTelemetry(Telemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Returns the number of harmonics rendered for the prepared note.
+     *
+     * @return active harmonics count
+     */
+    public int getActiveHarmonicCount() {
+        return harmonicCount;
+    }
+
+    /**
+     * Prepares the rendering of a new note. Filters the active
+     * harmonics and calculates the segment lengths from the
+     * actual parameters.
+     * Must be called before render, updateBuffer does this implicitly.
+     */
+    public void prepare() {
+        var snapshot = patchSource.get();
+        prepare(snapshot, snapshot.pitch());
+    }
+
+    /**
+     * Prepares the rendering of a new note with the given pitch
+     * instead of the global pitch setting.
+     *
+     * @param pitch pitch frequency in hertz
+     */
+    public void prepare(double pitch) {
+        prepare(patchSource.get(), pitch);
+    }
+
+    /**
+     * Prepares a note which sustains until it is released,
+     * at most MAX_HOLD_SECONDS. Used for played keys, the
+     * sustain setting of the patch is ignored.
+     *
+     * @param pitch pitch frequency in hertz
+     */
+    public void prepareHeld(double pitch) {
+        prepare(patchSource.get(), pitch);
+        sustainLength = MAX_HOLD_SECONDS * patch.sampleRate();
+        sampleCount = attackLength + sustainLength + (int) Math.ceil(decayLength);
+        envelopes.setNoteOff(attackLength + sustainLength);
+    }
+
+    /**
+     * Ends the sustain of the prepared note at the given position,
+     * the decay starts there. A release during the attack takes
+     * effect at the end of the attack, a release after the end of
+     * the sustain is ignored. Samples before the position are not
+     * changed.
+     *
+     * @param position sample position of the release
+     */
+    public void release(int position) {
+        var noteOff = Math.max(position, attackLength);
+        if (noteOff >= attackLength + sustainLength) {
+            return;
+        }
+
+        sustainLength = noteOff - attackLength;
+        sampleCount = noteOff + (int) Math.ceil(decayLength);
+        envelopes.setNoteOff(noteOff);
+        spectralEngine.invalidate();
+    }
+
+    /**
+     * Returns the version of the patch the note was prepared with.
+     *
+     * @return snapshot version
+     */
+    public long getPatchVersion() {
+        return patch.version();
+    }
+
+    /**
+     * Prepares the rendering of a new note from the given
+     * snapshot and pitch.
+     *
+     * @param snapshot patch settings
+     * @param pitch pitch frequency in hertz
+     */
+    public void prepare(PatchSnapshot snapshot, double pitch) {
+        this.patch = snapshot;
+        this.pitch = pitch;
+        livePatch = null;
+        updateActiveHarmonics();
+        int sampleRate = snapshot.sampleRate();
+        if ((format.getSampleRate() != sampleRate) || (sampleFormat != snapshot.sampleFormat())) {
+            sampleFormat = snapshot.sampleFormat();
+            format = sampleFormat.createFormat(sampleRate);
+        }
+        double decaySeconds = calcDecayLength();
+        var attack = renderedSegment(snapshot.attack());
+        var sustain = renderedSegment(snapshot.sustain());
+        int seconds = (int) (attack + sustain + decaySeconds);
+        sampleCount = seconds * sampleRate;
+
+        attackLength = (int) Math.round(attack * sampleRate);
+        sustainLength = (int) Math.round(sustain * sampleRate);
+        decayLength = decaySeconds * sampleRate;
+        setLoudness(snapshot.loudness());
+        deltaTime = 1.0d / sampleRate;
+
+        for (var k = 0; k < harmonicCount; k++) {
+            var overtoneNumber = snapshot.harmonics().overtoneNumber(activeIndex[k]);
+            deltas[k] = phaseIncrement(overtoneNumber);
+        }
+        bank.setup(deltas, harmonicCount);
+        envelopes.setup(snapshot.harmonics(), activeIndex, harmonicLoudness, harmonicCount,
+                attackLength + sustainLength, deltaTime);
+        spectral = (renderMethod == RenderMethod.SPECTRAL)
+                || ((renderMethod == RenderMethod.AUTO) && (harmonicCount >= SPECTRAL_MIN_PARTIALS));
+        spectralEngine.invalidate();
+    }
+
+    /**
+     * Returns the rendered length of the global attack or sustain,
+     * segments shorter than MIN_SEGMENT are skipped. The note length
+     * and the render cache key are derived from this value, so
+     * patches with the same key render the same number of samples.
+     *
+     * @param seconds segment length
+     * @return rendered segment length
+     */
+    static double renderedSegment(double seconds) {
+        return seconds < MIN_SEGMENT ? 0.0 : seconds;
+    }
+
+    /**
+     * Returns the quality tier of the oscillators.
+     *
+     * @return oscillator quality
+     */
+    public OscillatorQuality getQuality() {
+        return bank.getQuality();
+    }
+
+    /**
+     * Selects the quality tier of the oscillators.
+     * EXACT reproduces the Math.sin reference, RECURSIVE
+     * is the fastest one.
+     *
+     * @param quality oscillator quality
+     */
+    public void setQuality(OscillatorQuality quality) {
+        bank.setQuality(quality);
+    }
+
+    /**
+     * Returns the selected synthesis method.
+     *
+     * @return render method
+     */
+    public RenderMethod getRenderMethod() {
+        return renderMethod;
+    }
+
+    /**
+     * Selects the synthesis method, used from the next prepare on.
+     * The spectral method ignores the oscillator quality and
+     * deviates slightly from the direct method, mostly during
+     * the decay. The incremental mode uses it when all harmonics
+     * are rendered again, a changed harmonic is rendered directly.
+     *
+     * @param renderMethod synthesis method
+     */
+    public void setRenderMethod(RenderMethod renderMethod) {
+        this.renderMethod = renderMethod;
+    }
+
+    /**
+     * Returns true when the prepared note is rendered
+     * with the spectral engine.
+     *
+     * @return spectral render mode of the actual note
+     */
+    public boolean isSpectral() {
+        return spectral;
+    }
+
+    /**
+     * Returns true when updateBuffer renders on all cores.
+     *
+     * @return parallel render mode
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Selects the parallel render mode of updateBuffer. The
+     * note is split into chunks which are rendered in the
+     * common fork join pool. Every sample depends only on its
+     * position, so the result is identical to the serial mode.
+     *
+     * @param parallel true to render on all cores
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Returns true when updateBuffer renders incrementally.
+     *
+     * @return incremental render mode
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Selects the incremental render mode of updateBuffer.
+     * .
+     * The sum of all harmonics is kept without the global envelope.
+     * When only some harmonics change, the old contribution of these
+     * harmonics is subtracted and the new one added, all other
+     * harmonics are not rendered again. Changes of the pitch, the
+     * attack or sustain time, the note length or the oscillator
+     * quality render all harmonics like a normal render, in parallel,
+     * vectorized or with the spectral engine. A change of the global
+     * loudness only applies the envelope again.
+     *
+     * @param incremental true to render incrementally
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        if (!incremental) {
+            stemSum = new double[0];
+            stemLayout = new double[0];
+        }
+    }
+
+    /**
+     * Sets the level below which a harmonic is not rendered.
+     * The level is the harmonic loudness times the global
+     * loudness, used from the next prepare on.
+     *
+     * @param threshold level in dB relative to full scale
+     */
+    public void setCullThreshold(double threshold) {
+        cullThreshold = Math.pow(10.0, threshold / 20.0);
+    }
+
+    /**
+     * Returns the level below which a harmonic is not rendered.
+     *
+     * @return level in dB relative to full scale
+     */
+    public double getCullThreshold() {
+        return 20.0 * Math.log10(cullThreshold);
+    }
+
+    /**
+     * Returns true when the Vector API kernels are used.
+     *
+     * @return vectorized render mode
+     */
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    /**
+     * Selects the Vector API kernels for the harmonics summation
+     * and the recursive oscillators. Has no effect when the
+     * jdk.incubator.vector module is not available, the scalar
+     * kernels are used then.
+     *
+     * @param vectorized true to use the Vector API kernels
+     */
+    public void setVectorized(boolean vectorized) {
+        this.vectorized = vectorized && VECTOR_API_AVAILABLE;
+        bank.setVectorized(this.vectorized);
+    }
+
+    /**
+     * Checks if the jdk.incubator.vector module is present at runtime.
+     *
+     * @return true when the Vector API kernels can be used
+     */
+    public static boolean isVectorApiAvailable() {
+        return VECTOR_API_AVAILABLE;
+    }
+
+    /**
+     * Returns the number of samples of the prepared note.
+     *
+     * @return note length in samples
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Renders a range of samples of the prepared note into
+     * the given byte buffer. Every sample depends only on its
+     * position, so the note can be rendered in arbitrary blocks.
+     *
+     * @param firstSample first sample position within the note
+     * @param count number of samples to render
+     * @param dest destination byte buffer
+     * @param destPos first byte position in the destination buffer
+     * @return number of samples rendered, less than count at the end of the note
+     */
+    public int render(int firstSample, int count, byte[] dest, int destPos) {
+        var rendered = 0;
+        while (rendered < count) {
+            var blockSize = Math.min(count - rendered, MIX_BLOCK_SIZE);
+            Arrays.fill(mixBlock, 0, blockSize, 0.0);
+            var mixed = mix(firstSample + rendered, blockSize, mixBlock, 0);
+            if (mixed == 0) {
+                break;
+            }
+
+            sampleFormat.encode(mixBlock, mixed, dest, destPos + sampleFormat.getBytes() * rendered);
+            rendered += mixed;
+        }
+
+        return rendered;
+    }
+
+    /**
+     * Renders a range of samples of the prepared note directly
+     * into a byte buffer, e.g. a direct buffer of a file channel.
+     * Starts at the buffer position and advances it.
+     *
+     * @param firstSample first sample position within the note
+     * @param count number of samples to render, limited by the remaining buffer space
+     * @param dest destination byte buffer
+     * @return number of samples rendered, less than count at the end of the note
+     */
+    public int render(int firstSample, int count, ByteBuffer dest) {
+        count = Math.min(count, dest.remaining() / sampleFormat.getBytes());
+        var rendered = 0;
+        while (rendered < count) {
+            var blockSize = Math.min(count - rendered, MIX_BLOCK_SIZE);
+            Arrays.fill(mixBlock, 0, blockSize, 0.0);
+            var mixed = mix(firstSample + rendered, blockSize, mixBlock, 0);
+            if (mixed == 0) {
+                break;
+            }
+
+            sampleFormat.encode(mixBlock, mixed, dest);
+            rendered += mixed;
+        }
+
+        return rendered;
+    }
+
+    /**
+     * Adds a range of samples of the prepared note to the given
+     * mix bus. The values are not clipped, full scale is 1.0.
+     *
+     * @param firstSample first sample position within the note
+     * @param count number of samples to mix
+     * @param bus destination mix bus
+     * @param busPos first position in the mix bus
+     * @return number of samples mixed, less than count at the end of the note
+     */
+    public int mix(int firstSample, int count, double[] bus, int busPos) {
+        if (livePatch != null) {
+            return mixCrossfade(firstSample, count, bus, busPos);
+        }
+
+        return mix(bank, envelopes, spectral ? spectralEngine : null, firstSample, count, bus, busPos);
+    }
+
+    /**
+     * Takes over the loudness settings of a newer snapshot while
+     * a note is streamed. Called at block boundaries, the next
+     * mixed block fades from the old to the new settings. Changes
+     * of other parameters apply to the next note.
+     */
+    public void applyLive() {
+        var snapshot = patchSource.get();
+        if (snapshot.version() != patch.version()) {
+            livePatch = snapshot;
+        }
+    }
+
+    /**
+     * Adds a range of samples to the mix bus using the given oscillators
+     * or the given spectral engine.
+     *
+     * @param bank oscillators of the rendering thread
+     * @param envelopes harmonic envelopes of the rendering thread
+     * @param engine spectral engine of the rendering thread, null to use the oscillators
+     * @param firstSample first sample position within the note
+     * @param count number of samples to mix
+     * @param bus destination mix bus
+     * @param busPos first position in the mix bus
+     * @return number of samples mixed
+     */
+    private int mix(OscillatorBank bank, EnvelopeBank envelopes, SpectralEngine engine,
+                    int firstSample, int count, double[] bus, int busPos) {
+        var end = Math.min(firstSample + count, sampleCount);
+        if (end <= firstSample) {
+            return 0;
+        }
+
+        var pos = fillAttack(bank, envelopes, engine, firstSample, end, bus, busPos);
+        pos = fillSustain(bank, envelopes, engine, firstSample, end, bus, pos);
+        fillDecay(bank, envelopes, engine, firstSample, end, bus, pos);
+        return end - firstSample;
+    }
+
+    /**
+     * Estimates the envelope level of the prepared note at the
+     * given sample position, used to find the quietest voice.
+     *
+     * @param sample sample position within the note
+     * @return sum of the harmonics loudness at this position
+     */
+    public double levelAt(int sample) {
+        double sum = 0.0;
+        for (var k = 0; k < harmonicCount; k++) {
+            sum += envelopes.amplitudeAt(k, sample);
+        }
+
+        return sum * (sample < attackLength ? sample * deltaLoudness : loudness);
+    }
+
+    /**
+     * Looks up the Vector API without loading the vector kernels.
+     *
+     * @return true when the module is present
+     */
+    private static boolean checkVectorApi() {
+        try {
+            Class.forName("jdk.incubator.vector.DoubleVector");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Filter all inactive harmonics.
+     * All internal processing uses the (shorter) active
+     * harmonics list.
+     */
+    void updateActiveHarmonics() {
+        var harmonics = patch.harmonics();
+        var activeCount = 0;
+        var aboveNyquist = 0;
+        var inaudible = 0;
+        for (var i = 0; i < harmonics.size(); i++) {
+            if (isAudible(harmonics, i)) {
+                activeCount++;
+            } else if (harmonics.isActive(i) && isAboveNyquist(harmonics, i)) {
+                aboveNyquist++;
+            } else if (harmonics.isActive(i)) {
+                inaudible++;
+            }
+        }
+
+        if (activeIndex.length < activeCount) {
+            activeIndex = new int[activeCount];
+            deltas = new double[activeCount];
+            harmonicLoudness = new double[activeCount];
+            harmonicDecay = new double[activeCount];
+        }
+
+        var insertPos = 0;
+        for (var i = 0; i < harmonics.size(); i++) {
+            if (isAudible(harmonics, i)) {
+                // insertion sort, longest decay first
+                var decay = harmonics.decay(i);
+                var pos = insertPos++;
+                while ((pos > 0) && (harmonicDecay[pos - 1] < decay)) {
+                    activeIndex[pos] = activeIndex[pos - 1];
+                    harmonicLoudness[pos] = harmonicLoudness[pos - 1];
+                    harmonicDecay[pos] = harmonicDecay[pos - 1];
+                    pos--;
+                }
+                activeIndex[pos] = i;
+                harmonicLoudness[pos] = harmonics.loudness(i);
+                harmonicDecay[pos] = decay;
+            }
+        }
+        harmonicCount = activeCount;
+        telemetry.recordCulled(aboveNyquist, inaudible);
+    }
+
+    /**
+     * Checks if a harmonic is rendered: it must be active,
+     * below the Nyquist frequency and above the cull threshold.
+     *
+     * @param harmonics settings of all harmonics
+     * @param index position of the harmonic
+     * @return true when the harmonic is rendered
+     */
+    private boolean isAudible(HarmonicBank harmonics, int index) {
+        return harmonics.isActive(index) && !isAboveNyquist(harmonics, index)
+                && (harmonics.loudness(index) * patch.loudness() >= cullThreshold);
+    }
+
+    /**
+     * Checks if the frequency of a harmonic is at or above
+     * the Nyquist frequency, such harmonics would alias. The test
+     * uses the phase increment of the oscillators: half a period
+     * per sample is the Nyquist frequency.
+     *
+     * @param harmonics settings of all harmonics
+     * @param index position of the harmonic
+     * @return true when the harmonic can not be rendered
+     */
+    private boolean isAboveNyquist(HarmonicBank harmonics, int index) {
+        return phaseIncrement(harmonics.overtoneNumber(index)) >= Math.PI;
+    }
+
+    /**
+     * Calculates the phase increment per sample of a harmonic
+     * of the actual note.
+     *
+     * @param overtoneNumber overtone position of the harmonic
+     * @return phase increment in radians
+     */
+    private double phaseIncrement(int overtoneNumber) {
+        return (Math.PI * overtoneNumber * pitch) / patch.sampleRate();
+    }
+
+    /**
+     * Drops the quietest rendered harmonic of the actual note,
+     * called by the block sources when the rendering falls behind.
+     * The last harmonic is never dropped.
+     *
+     * @return overtone number of the dropped harmonic, 0 if none was dropped
+     */
+    public int shedQuietest() {
+        if (harmonicCount <= 1) {
+            return 0;
+        }
+
+        var quietest = 0;
+        for (var k = 1; k < harmonicCount; k++) {
+            if (harmonicLoudness[k] < harmonicLoudness[quietest]) {
+                quietest = k;
+            }
+        }
+
+        var overtoneNumber = patch.harmonics().overtoneNumber(activeIndex[quietest]);
+        var level = 20.0 * Math.log10(harmonicLoudness[quietest] * loudness);
+        var moved = harmonicCount - quietest - 1;
+        System.arraycopy(activeIndex, quietest + 1, activeIndex, quietest, moved);
+        System.arraycopy(deltas, quietest + 1, deltas, quietest, moved);
+        System.arraycopy(harmonicLoudness, quietest + 1, harmonicLoudness, quietest, moved);
+        System.arraycopy(harmonicDecay, quietest + 1, harmonicDecay, quietest, moved);
+        harmonicCount--;
+        bank.setup(deltas, harmonicCount);
+        envelopes.remove(quietest);
+        spectralEngine.invalidate();
+
+        telemetry.recordGovernorDrop(overtoneNumber, level);
+        return overtoneNumber;
+    }
+
+    /**
+     * Returns the level of the quietest rendered harmonic,
+     * used to select the voice which drops a harmonic.
+     *
+     * @return level in dB, positive infinity when no harmonic can be dropped
+     */
+    public double getQuietestLevel() {
+        if (harmonicCount <= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        var quietest = harmonicLoudness[0];
+        for (var k = 1; k < harmonicCount; k++) {
+            quietest = Math.min(quietest, harmonicLoudness[k]);
+        }
+
+        return 20.0 * Math.log10(quietest * loudness);
+    }
+
+    /**
+     * Sets the global loudness of the prepared note.
+     *
+     * @param globalLoudness loudness in the range from 0 to 1
+     */
+    private void setLoudness(double globalLoudness) {
+        loudness = globalLoudness;
+        deltaLoudness = attackLength > 0 ? loudness / attackLength : 0.0;
+        attackOffset = 0.0;
+    }
+
+    /**
+     * Sets the global envelope to 1 for the whole note, so the
+     * mix path renders the harmonics sum of the incremental mode.
+     */
+    private void setUnitEnvelope() {
+        loudness = 1.0;
+        deltaLoudness = 0.0;
+        attackOffset = 1.0;
+    }
+
+    /**
+     * Mixes a block twice, with the old and the new live settings,
+     * and fades linearly from the old to the new block. The new
+     * settings stay active afterwards.
+     *
+     * @param firstSample first sample position within the note
+     * @param count number of samples to mix
+     * @param bus destination mix bus
+     * @param busPos first position in the mix bus
+     * @return number of samples mixed
+     */
+    private int mixCrossfade(int firstSample, int count, double[] bus, int busPos) {
+        if (fadeOld.length < count) {
+            fadeOld = new double[count];
+            fadeNew = new double[count];
+        }
+
+        Arrays.fill(fadeOld, 0, count, 0.0);
+        var engine = spectral ? spectralEngine : null;
+        var mixed = mix(bank, envelopes, engine, firstSample, count, fadeOld, 0);
+
+        var harmonics = livePatch.harmonics();
+        if (harmonics.size() == patch.harmonics().size()) {
+            for (var k = 0; k < harmonicCount; k++) {
+                harmonicLoudness[k] = harmonics.loudness(activeIndex[k]);
+            }
+        }
+        setLoudness(livePatch.loudness());
+        patch = livePatch;
+        livePatch = null;
+        envelopes.setLoudness(harmonicLoudness);
+        spectralEngine.invalidate();
+
+        Arrays.fill(fadeNew, 0, count, 0.0);
+        mix(bank, envelopes, engine, firstSample, count, fadeNew, 0);
+        for (var j = 0; j < mixed; j++) {
+            var weight = (j + 1.0) / mixed;
+            bus[busPos + j] += fadeOld[j] + (fadeNew[j] - fadeOld[j]) * weight;
+        }
+
+        return mixed;
+    }
+
+    /**
+     * Adds the attack part of the sample range to the mix bus.
+     *
+     * @param bank oscillators of the rendering thread
+     * @param envelopes harmonic envelopes of the rendering thread
+     * @param engine spectral engine of the rendering thread, null to use the oscillators
+     * @param firstSample first sample position of the range
+     * @param end end sample position of the range (exclusive)
+     * @param bus destination mix bus
+     * @param pos first mix bus position
+     * @return next mix bus position
+     */
+    private int fillAttack(OscillatorBank bank, EnvelopeBank envelopes, SpectralEngine engine,
+                           int firstSample, int end, double[] bus, int pos) {
+        var last = Math.min(end, attackLength);
+        if (firstSample >= last) {
+            return pos;
+        }
+
+        if (engine != null) {
+            var sum = engine.render(deltas, envelopes, harmonicCount, 0, 0, 0, firstSample, last - firstSample);
+            for (var i = firstSample; i < last; i++) {
+                bus[pos++] += sum[i - firstSample] * (attackOffset + i * deltaLoudness);
+            }
+
+            return pos;
+        }
+
+        bank.setActiveCount(harmonicCount);
+        bank.seek(firstSample);
+        envelopes.seek(firstSample);
+        for (var i = firstSample; i < last; i++) {
+            bus[pos++] += calcOneSample(bank, envelopes, harmonicCount) * (attackOffset + i * deltaLoudness);
+            bank.next();
+            envelopes.next();
+        }
+
+        return pos;
+    }
+
+    /**
+     * Adds the sustain part of the sample range to the mix bus.
+     *
+     * @param bank oscillators of the rendering thread
+     * @param envelopes harmonic envelopes of the rendering thread
+     * @param engine spectral engine of the rendering thread, null to use the oscillators
+     * @param firstSample first sample position of the range
+     * @param end end sample position of the range (exclusive)
+     * @param bus destination mix bus
+     * @param pos first mix bus position
+     * @return next mix bus position
+     */
+    private int fillSustain(OscillatorBank bank, EnvelopeBank envelopes, SpectralEngine engine,
+                            int firstSample, int end, double[] bus, int pos) {
+        var sustainStart = attackLength;
+        var last = Math.min(end, sustainStart + sustainLength);
+        var first = Math.max(firstSample, sustainStart);
+        if (first >= last) {
+            return pos;
+        }
+
+        if (engine != null) {
+            var sum = engine.render(deltas, envelopes, harmonicCount, 1, sustainStart, 0,
+                    first - sustainStart, last - first);
+            for (var j = 0; j < last - first; j++) {
+                bus[pos++] += sum[j] * loudness;
+            }
+
+            return pos;
+        }
+
+        bank.setActiveCount(harmonicCount);
+        bank.seek(first - sustainStart);
+        envelopes.seek(first);
+        for (var i = first; i < last; i++) {
+            bus[pos++] += calcOneSample(bank, envelopes, harmonicCount) * loudness;
+            bank.next();
+            envelopes.next();
+        }
+
+        return pos;
+    }
+
+    /**
+     * Adds the decay part of the sample range to the mix bus.
+     * Samples behind the longest harmonic decay stay silent.
+     * Harmonics which have finished their decay at the start
+     * of the range are not calculated. The telemetry counts each
+     * harmonic once, in the range where its decay finishes.
+     *
+     * @param bank oscillators of the rendering thread
+     * @param envelopes harmonic envelopes of the rendering thread
+     * @param engine spectral engine of the rendering thread, null to use the oscillators
+     * @param firstSample first sample position of the range
+     * @param end end sample position of the range (exclusive)
+     * @param bus destination mix bus
+     * @param pos first mix bus position
+     */
+    private void fillDecay(OscillatorBank bank, EnvelopeBank envelopes, SpectralEngine engine,
+                           int firstSample, int end, double[] bus, int pos) {
+        var decayStart = attackLength + sustainLength;
+        var first = Math.max(firstSample, decayStart);
+        if (first >= end) {
+            return;
+        }
+
+        var startTime = (first - decayStart) * deltaTime;
+        var sounding = 0;
+        while ((sounding < harmonicCount) && (harmonicDecay[sounding] > startTime)) {
+            sounding++;
+        }
+        // counted in the range where the decay ends, once per harmonic for any block split
+        var endTime = (end - decayStart) * deltaTime;
+        var finished = 0;
+        while ((finished < sounding) && (harmonicDecay[sounding - finished - 1] <= endTime)) {
+            finished++;
+        }
+        if (finished > 0) {
+            telemetry.recordDecayCulled(finished);
+        }
+        if (sounding == 0) {
+            return;
+        }
+
+        if (engine != null) {
+            // the frames reach back before the block start, all harmonics are passed
+            var sum = engine.render(deltas, envelopes, harmonicCount, 2, decayStart, 1,
+                    first - decayStart, end - first);
+            for (var i = first; i < end; i++) {
+                if (i - decayStart + 1 < decayLength) {
+                    bus[pos] += sum[i - first] * loudness;
+                }
+                pos++;
+            }
+
+            return;
+        }
+
+        bank.setActiveCount(sounding);
+        bank.seek(first - decayStart + 1);
+        envelopes.seek(first);
+        for (var i = first; i < end; i++) {
+            var position = i - decayStart + 1;
+            if (position < decayLength) {
+                bus[pos] += calcOneSample(bank, envelopes, sounding) * loudness;
+                bank.next();
+                envelopes.next();
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Calculates the harmonics sum at the actual oscillator and
+     * envelope position and advances the envelopes by one sample.
+     * The envelope update is a multiply-add per harmonic, it is
+     * skipped while no envelope changes.
+     *
+     * @param bank oscillators of the rendering thread
+     * @param envelopes harmonic envelopes of the rendering thread
+     * @param count number of harmonics still sounding
+     * @return harmonics sum without the global envelope
+     */
+    private double calcOneSample(OscillatorBank bank, EnvelopeBank envelopes, int count) {
+        var values = bank.values();
+        var amplitudes = envelopes.amplitudes();
+        if (!envelopes.isMoving()) {
+            return vectorized ? VectorKernel.dot(values, amplitudes, count) : dot(values, amplitudes, count);
+        }
+
+        var multipliers = envelopes.multipliers();
+        var increments = envelopes.increments();
+        if (vectorized) {
+            return VectorKernel.envelopeSum(values, amplitudes, multipliers, increments, count);
+        }
+
+        double sum = 0.0;
+        for (var k = 0; k < count; k++) {
+            var amplitude = amplitudes[k];
+            sum += values[k] * amplitude;
+            amplitudes[k] = amplitude * multipliers[k] + increments[k];
+        }
+
+        return sum;
+    }
+
+    /**
+     * Calculates the sum of the products of both arrays.
+     *
+     * @param values oscillator values
+     * @param amplitudes amplitude of each harmonic
+     * @param count number of harmonics
+     * @return sum of products
+     */
+    private static double dot(double[] values, double[] amplitudes, int count) {
+        double sum = 0.0;
+        for (var k = 0; k < count; k++) {
+            var part = values[k] * amplitudes[k];
+            sum += part;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Brings the harmonics sum up to date with the prepared note.
+     * Renders all harmonics through the mix path when the layout
+     * of the note changed, otherwise only the changed harmonics.
+     */
+    private void updateStems() {
+        var harmonics = patch.harmonics();
+        var layout = new double[] {pitch, patch.sampleRate(), attackLength, sustainLength,
+                sampleCount, decayLength, bank.getQuality().ordinal(), harmonics.size(), cullThreshold};
+        if (!Arrays.equals(layout, stemLayout)) {
+            renderAllStems(harmonics);
+            stemLayout = layout;
+            return;
+        }
+
+        for (var i = 0; i < harmonics.size(); i++) {
+            var audible = isAudible(harmonics, i);
+            if ((stemActive[i] == audible) && harmonics.sameSound(i, stemBank)) {
+                continue;
+            }
+            if (cancelled.getAsBoolean()) {
+                // the stems are partly updated, the next update renders all of them
+                stemLayout = new double[0];
+                checkCancelled();
+            }
+
+            if (stemActive[i]) {
+                addStem(stemBank, i, -1.0);
+            }
+            if (audible) {
+                addStem(harmonics, i, 1.0);
+            }
+            stemActive[i] = audible;
+        }
+        stemBank = harmonics;
+    }
+
+    /**
+     * Renders the sum of all audible harmonics of the prepared note
+     * like a normal render, parallel, vectorized or spectral, but
+     * with the global envelope set to 1.
+     *
+     * @param harmonics settings of all harmonics
+     */
+    private void renderAllStems(HarmonicBank harmonics) {
+        stemLayout = new double[0];
+        if (stemSum.length == sampleCount) {
+            Arrays.fill(stemSum, 0.0);
+        } else {
+            stemSum = new double[sampleCount];
+        }
+        stemActive = new boolean[harmonics.size()];
+        for (var i = 0; i < harmonics.size(); i++) {
+            stemActive[i] = isAudible(harmonics, i);
+        }
+        stemBank = harmonics;
+
+        setUnitEnvelope();
+        try {
+            if (parallel && (sampleCount >= 2 * PARALLEL_CHUNK_SIZE)) {
+                ForkJoinPool.commonPool().invoke(new RenderTask(0, sampleCount, stemSum));
+            } else {
+                var engine = spectral ? spectralEngine : null;
+                for (var first = 0; first < sampleCount; first += PARALLEL_CHUNK_SIZE) {
+                    checkCancelled();
+                    mix(bank, envelopes, engine, first, PARALLEL_CHUNK_SIZE, stemSum, first);
+                }
+            }
+        } finally {
+            setLoudness(patch.loudness());
+        }
+    }
+
+    /**
+     * Adds the contribution of one harmonic to the harmonics sum.
+     * A negative sign removes a previously added contribution.
+     *
+     * @param harmonics settings of all harmonics
+     * @param index position of the harmonic
+     * @param sign 1.0 to add, -1.0 to remove the harmonic
+     */
+    private void addStem(HarmonicBank harmonics, int index, double sign) {
+        var oscillator = new OscillatorBank();
+        oscillator.setQuality(bank.getQuality());
+        oscillator.setup(new double[] {phaseIncrement(harmonics.overtoneNumber(index))}, 1);
+        var values = oscillator.values();
+
+        var decayStart = Math.min(attackLength + sustainLength, sampleCount);
+        var envelope = new EnvelopeBank();
+        envelope.setup(harmonics, new int[] {index}, new double[] {sign * harmonics.loudness(index)}, 1,
+                attackLength + sustainLength, deltaTime);
+        var amplitudes = envelope.amplitudes();
+        var multipliers = envelope.multipliers();
+        var increments = envelope.increments();
+
+        oscillator.seek(0);
+        envelope.seek(0);
+        for (var i = 0; i < sampleCount; i++) {
+            if (i == attackLength) {
+                oscillator.seek(0);
+            }
+            if (i == decayStart) {
+                oscillator.seek(1);
+            }
+            if ((i >= decayStart) && (i - decayStart + 1 >= decayLength)) {
+                break;
+            }
+
+            stemSum[i] += values[0] * amplitudes[0];
+            amplitudes[0] = amplitudes[0] * multipliers[0] + increments[0];
+            oscillator.next();
+            envelope.next();
+        }
+    }
+
+    /**
+     * Applies the global envelope to the harmonics sum and
+     * converts it into the audio byte buffer.
+     */
+    private void renderStems() {
+        var decayStart = attackLength + sustainLength;
+        for (var first = 0; first < sampleCount; first += MIX_BLOCK_SIZE) {
+            var count = Math.min(MIX_BLOCK_SIZE, sampleCount - first);
+            for (var j = 0; j < count; j++) {
+                var i = first + j;
+                double envelope;
+                if (i < attackLength) {
+                    envelope = i * deltaLoudness;
+                } else if (i < decayStart) {
+                    envelope = loudness;
+                } else {
+                    envelope = (i - decayStart + 1) < decayLength ? loudness : 0.0;
+                }
+                mixBlock[j] = stemSum[i] * envelope;
+            }
+
+            sampleFormat.encode(mixBlock, count, buffer, sampleFormat.getBytes() * first);
+        }
+    }
+
+    /**
+     * Calculates the decay length.
+     * Uses the length of the longest harmonic.
+     *
+     * @return length in seconds
+     */
+    private double calcDecayLength() {
+        double harmonicLength = 0;
+        for (var k = 0; k < harmonicCount; k++) {
+            harmonicLength = Math.max(harmonicLength, harmonicDecay[k]);
+        }
+
+        return harmonicLength;
+    }
+
+    /**
+     * Renders a sample range of the audio byte buffer in the
+     * fork join pool. Ranges are split in halves down to the
+     * chunk size, each chunk uses its own oscillators, envelopes
+     * or spectral engine and mix block so the chunks stay in the cache.
+     * The split points are multiples of the chunk size, which is a
+     * multiple of the re-seed interval, so a chunk starts without
+     * replaying oscillator samples. The remainder at the end of the
+     * note joins the last chunk instead of becoming a tiny task.
+     * With a target array the chunks are mixed into the array
+     * at their sample position instead of the audio byte buffer.
+     */
+    private class RenderTask extends RecursiveAction {
+        private final int firstSample;
+        private final int count;
+        private final double[] target;
+
+        /**
+         * Constructor with the sample range to render.
+         *
+         * @param firstSample first sample position
+         * @param count number of samples
+         * @param target destination of the samples, null for the audio byte buffer
+         */
+        RenderTask(int firstSample, int count, double[] target) {
+            this.firstSample = firstSample;
+            this.count = count;
+            this.target = target;
+        }
+
+        @Override
+        protected void compute() {
+            if (count < 2 * PARALLEL_CHUNK_SIZE) {
+                checkCancelled();
+                var chunkBank = bank.copy();
+                var chunkEnvelopes = envelopes.copy();
+                var engine = spectral ? new SpectralEngine() : null;
+                if (target != null) {
+                    mix(chunkBank, chunkEnvelopes, engine, firstSample, count, target, firstSample);
+                    return;
+                }
+                var chunk = new double[count];
+                var mixed = mix(chunkBank, chunkEnvelopes, engine, firstSample, count, chunk, 0);
+                sampleFormat.encode(chunk, mixed, buffer, sampleFormat.getBytes() * firstSample);
+                return;
+            }
+
+            // both parts get at least one chunk
+            var half = (count / (2 * PARALLEL_CHUNK_SIZE)) * PARALLEL_CHUNK_SIZE;
+            invokeAll(new RenderTask(firstSample, half, target),
+                    new RenderTask(firstSample + half, count - half, target));
+        }
+    }
+}
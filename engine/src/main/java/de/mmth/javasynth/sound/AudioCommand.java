@@ -0,0 +1,51 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Command for the player thread. The time of the
+ * request is kept to measure the latency up to the
+ * first audible frame.
+ *
+ * @param kind command type
+ * @param buffer rendered sound of a play command
+ * @param source block source of a stream command
+ * @param requestTime System.nanoTime() of the request
+ */
+record AudioCommand(Kind kind, AudioBuffer buffer, BlockSource source, long requestTime) {
+
+    /**
+     * Types of the player commands.
+     */
+    enum Kind {
+        /**
+         * Plays a rendered audio buffer.
+         */
+        PLAY,
+
+        /**
+         * Streams a block source.
+         */
+        STREAM,
+
+        /**
+         * Stops the actual output.
+         */
+        STOP
+    }
+
+    static AudioCommand play(AudioBuffer buffer, long requestTime) {
+        return new AudioCommand(Kind.PLAY, buffer, null, requestTime);
+    }
+
+    static AudioCommand stream(BlockSource source) {
+        return new AudioCommand(Kind.STREAM, null, source, System.nanoTime());
+    }
+
+    static AudioCommand stop() {
+        return new AudioCommand(Kind.STOP, null, null, System.nanoTime());
+    }
+}
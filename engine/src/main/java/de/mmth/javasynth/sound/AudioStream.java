@@ -0,0 +1,81 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+
+/**
+ * Streams a prepared note block by block. Only the
+ * requested block is rendered, so the memory usage
+ * does not depend on the length of the note.
+ */
+public class AudioStream implements BlockSource {
+    private final AudioBuffer audioBuffer;
+    private int position;
+    private CpuGovernor governor;
+
+    /**
+     * Constructor gets the prepared audio buffer injected.
+     *
+     * @param audioBuffer renderer of the note, prepare must have been called
+     */
+    public AudioStream(AudioBuffer audioBuffer) {
+        this.audioBuffer = audioBuffer;
+    }
+
+    /**
+     * Sets the governor which drops the quietest harmonic when
+     * a block takes too long. Without a governor, e.g. for offline
+     * rendering, all harmonics are rendered.
+     *
+     * @param governor CPU governor, null to render all harmonics
+     */
+    public void setGovernor(CpuGovernor governor) {
+        this.governor = governor;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return audioBuffer.getFormat();
+    }
+
+    @Override
+    public int read(byte[] block) {
+        audioBuffer.applyLive();
+        var start = System.nanoTime();
+        var frameSize = getFormat().getFrameSize();
+        var count = audioBuffer.render(position, block.length / frameSize, block, 0);
+        position += count;
+        checkDeadline(start, count);
+        return count * frameSize;
+    }
+
+    @Override
+    public int read(ByteBuffer block) {
+        audioBuffer.applyLive();
+        var start = System.nanoTime();
+        var frameSize = getFormat().getFrameSize();
+        var count = audioBuffer.render(position, block.remaining() / frameSize, block);
+        position += count;
+        checkDeadline(start, count);
+        return count * frameSize;
+    }
+
+    /**
+     * Drops the quietest harmonic when the block took longer
+     * than the governor allows.
+     *
+     * @param start System.nanoTime() at the start of the block
+     * @param count number of rendered frames
+     */
+    private void checkDeadline(long start, int count) {
+        if ((governor != null) && (count > 0)
+                && governor.isBehind(System.nanoTime() - start, count, (int) getFormat().getSampleRate())) {
+            audioBuffer.shedQuietest();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+
+/**
+ * Source of audio data which is rendered block by
+ * block on demand of the audio output.
+ */
+public interface BlockSource {
+    /**
+     * Returns the audio format of the rendered blocks.
+     *
+     * @return audio format
+     */
+    AudioFormat getFormat();
+
+    /**
+     * Renders the next block of audio data.
+     *
+     * @param block destination buffer, a multiple of the frame size
+     * @return number of bytes written, 0 at the end of the sound
+     */
+    int read(byte[] block);
+
+    /**
+     * Renders the next block directly into a byte buffer, starting
+     * at its position. The default implementation renders into a
+     * temporary array, sources should override it to avoid the copy.
+     *
+     * @param block destination buffer, the remaining space is a multiple of the frame size
+     * @return number of bytes written, 0 at the end of the sound
+     */
+    default int read(ByteBuffer block) {
+        var data = new byte[block.remaining()];
+        var length = read(data);
+        block.put(data, 0, length);
+        return length;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Watches the render time of the streamed blocks.
+ * .
+ * A block has to be rendered within its playing time, otherwise
+ * the output line runs empty. The governor allows only a part
+ * of this time, the budget, so the player thread and the rest
+ * of the system keep some headroom. When a block takes longer,
+ * the block source drops its quietest harmonic.
+ */
+public class CpuGovernor {
+    public static final double DEFAULT_BUDGET = 0.5;
+
+    private final double budget;
+
+    /**
+     * Constructor with the allowed part of the block time.
+     *
+     * @param budget part of the playing time, greater than 0 and at most 1
+     */
+    public CpuGovernor(double budget) {
+        if ((budget <= 0.0) || (budget > 1.0)) {
+            throw new IllegalArgumentException("Budget out of range: " + budget);
+        }
+
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the allowed part of the block time.
+     *
+     * @return budget
+     */
+    public double getBudget() {
+        return budget;
+    }
+
+    /**
+     * Checks if a block took longer than its budget.
+     *
+     * @param nanos render time of the block in nanoseconds
+     * @param frames number of rendered frames
+     * @param sampleRate sample rate of the block
+     * @return true when harmonics should be dropped
+     */
+    public boolean isBehind(long nanos, int frames, int sampleRate) {
+        return nanos > budget * frames * 1_000_000_000.0 / sampleRate;
+    }
+}
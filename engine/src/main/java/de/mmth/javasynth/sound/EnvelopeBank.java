@@ -0,0 +1,433 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the envelope amplitudes of all active harmonics
+ * for consecutive sample positions.
+ * .
+ * Every envelope segment is an affine recurrence: the amplitude
+ * of the next sample is amplitude * multiplier + increment. The
+ * coefficients are constant within a segment, so the render kernels
+ * advance all harmonics without divisions or branches. The segment
+ * boundaries of all harmonics are sorted into an event list when a
+ * note is prepared, at each event the amplitude and coefficients of
+ * the affected harmonic are set from the closed form.
+ * .
+ * Like the oscillators, all amplitudes are re-seeded with exact
+ * values at every multiple of OscillatorBank.RESEED_INTERVAL and a
+ * seek starts at the preceding re-seed point, so the values at a
+ * position do not depend on how a note is split into blocks.
+ * A seek which continues the previous block within the actual
+ * re-seed period keeps the advanced amplitudes, the render kernels
+ * have advanced them with the same recurrence.
+ */
+final class EnvelopeBank {
+    private static final double EXPONENTIAL_RATE = 5.0;
+    private static final double EXPONENTIAL_SPAN = 1.0 - Math.exp(-EXPONENTIAL_RATE);
+
+    private int count;
+    private int noteOff;
+    private double deltaTime;
+    private int position;
+    private int moving;
+    private double[] loudness = new double[0];
+    private double[] attack = new double[0];
+    private double[] fall = new double[0];
+    private double[] sustainLevel = new double[0];
+    private double[] release = new double[0];
+    private double[] releaseLevel = new double[0];
+    private boolean[] exponential = new boolean[0];
+    private int[] attackEnd = new int[0];
+    private int[] fallEnd = new int[0];
+    private int[] releaseEnd = new int[0];
+    private double[] amplitudes = new double[0];
+    private double[] multipliers = new double[0];
+    private double[] increments = new double[0];
+    private long[] events = new long[0];
+    private int eventCount;
+    private int nextEvent;
+    private boolean valid;
+
+    /**
+     * Takes over the envelopes of the rendered harmonics.
+     *
+     * @param harmonics settings of all harmonics
+     * @param activeIndex bank position of each rendered harmonic
+     * @param loudness loudness of each rendered harmonic
+     * @param count number of rendered harmonics
+     * @param noteOff sample position where the note sustain ends
+     * @param deltaTime duration of one sample in seconds
+     */
+    void setup(HarmonicBank harmonics, int[] activeIndex, double[] loudness, int count, int noteOff, double deltaTime) {
+        if (this.loudness.length < count) {
+            allocate(count);
+        }
+
+        this.count = count;
+        this.noteOff = noteOff;
+        this.deltaTime = deltaTime;
+        valid = false;
+        for (var k = 0; k < count; k++) {
+            var index = activeIndex[k];
+            this.loudness[k] = loudness[k];
+            attack[k] = harmonics.attack(index);
+            fall[k] = harmonics.fall(index);
+            sustainLevel[k] = harmonics.sustainLevel(index);
+            release[k] = harmonics.decay(index);
+            exponential[k] = harmonics.curve(index) == EnvelopeCurve.EXPONENTIAL;
+        }
+        updateBoundaries();
+    }
+
+    /**
+     * Creates a bank with the same envelopes,
+     * used for rendering in another thread.
+     *
+     * @return independent copy of this bank
+     */
+    EnvelopeBank copy() {
+        var bank = new EnvelopeBank();
+        bank.count = count;
+        bank.noteOff = noteOff;
+        bank.deltaTime = deltaTime;
+        bank.loudness = loudness.clone();
+        bank.attack = attack.clone();
+        bank.fall = fall.clone();
+        bank.sustainLevel = sustainLevel.clone();
+        bank.release = release.clone();
+        bank.releaseLevel = releaseLevel.clone();
+        bank.exponential = exponential.clone();
+        bank.attackEnd = attackEnd.clone();
+        bank.fallEnd = fallEnd.clone();
+        bank.releaseEnd = releaseEnd.clone();
+        bank.amplitudes = new double[amplitudes.length];
+        bank.multipliers = new double[multipliers.length];
+        bank.increments = new double[increments.length];
+        bank.events = events.clone();
+        bank.eventCount = eventCount;
+        return bank;
+    }
+
+    /**
+     * Takes over changed loudness values, used from the next seek on.
+     *
+     * @param loudness loudness of each rendered harmonic
+     */
+    void setLoudness(double[] loudness) {
+        System.arraycopy(loudness, 0, this.loudness, 0, count);
+        valid = false;
+    }
+
+    /**
+     * Moves the end of the sustain, e.g. when a held key is
+     * released. Used from the next seek on.
+     *
+     * @param noteOff sample position where the note sustain ends
+     */
+    void setNoteOff(int noteOff) {
+        this.noteOff = noteOff;
+        valid = false;
+        updateBoundaries();
+    }
+
+    /**
+     * Removes a harmonic, the following harmonics move up
+     * one position. Used from the next seek on.
+     *
+     * @param index position of the harmonic
+     */
+    void remove(int index) {
+        var moved = count - index - 1;
+        System.arraycopy(loudness, index + 1, loudness, index, moved);
+        System.arraycopy(attack, index + 1, attack, index, moved);
+        System.arraycopy(fall, index + 1, fall, index, moved);
+        System.arraycopy(sustainLevel, index + 1, sustainLevel, index, moved);
+        System.arraycopy(release, index + 1, release, index, moved);
+        System.arraycopy(exponential, index + 1, exponential, index, moved);
+        count--;
+        valid = false;
+        updateBoundaries();
+    }
+
+    /**
+     * Returns the amplitudes at the actual position, one entry per
+     * harmonic. The render kernels advance them in place.
+     *
+     * @return amplitudes, only valid up to the harmonics count
+     */
+    double[] amplitudes() {
+        return amplitudes;
+    }
+
+    double[] multipliers() {
+        return multipliers;
+    }
+
+    double[] increments() {
+        return increments;
+    }
+
+    /**
+     * Checks if any amplitude changes from sample to sample.
+     * When false the kernels may skip the amplitude update.
+     *
+     * @return true when at least one harmonic is in a ramp
+     */
+    boolean isMoving() {
+        return moving > 0;
+    }
+
+    /**
+     * Calculates the amplitude of a harmonic at any position
+     * from the closed form, without changing the bank state.
+     *
+     * @param k position of the harmonic
+     * @param sample sample position within the note
+     * @return loudness times envelope gain
+     */
+    double amplitudeAt(int k, int sample) {
+        return loudness[k] * gain(k, sample);
+    }
+
+    /**
+     * Moves all envelopes to the given sample position.
+     *
+     * @param position sample position within the note
+     */
+    void seek(int position) {
+        var continues = valid && (position >= this.position)
+                && ((position / OscillatorBank.RESEED_INTERVAL) == (this.position / OscillatorBank.RESEED_INTERVAL));
+        if (!continues) {
+            this.position = position - (position % OscillatorBank.RESEED_INTERVAL);
+            seedAll();
+            valid = true;
+        }
+        while (this.position < position) {
+            for (var k = 0; k < count; k++) {
+                amplitudes[k] = amplitudes[k] * multipliers[k] + increments[k];
+            }
+            next();
+        }
+    }
+
+    /**
+     * Moves to the next sample position after the amplitudes
+     * have been advanced, handles the segment boundaries.
+     */
+    void next() {
+        position++;
+        if (((position % OscillatorBank.RESEED_INTERVAL) == 0) || (position == noteOff)) {
+            seedAll();
+            return;
+        }
+
+        while ((nextEvent < eventCount) && ((int) (events[nextEvent] >>> 32) == position)) {
+            seed((int) events[nextEvent], position);
+            nextEvent++;
+        }
+    }
+
+    /**
+     * Sets all harmonics to exact values at the actual position
+     * and moves the event cursor behind this position.
+     */
+    private void seedAll() {
+        moving = 0;
+        for (var k = 0; k < count; k++) {
+            multipliers[k] = 1.0;
+            increments[k] = 0.0;
+            seed(k, position);
+        }
+
+        var key = ((long) position << 32) | 0xffffffffL;
+        var found = Arrays.binarySearch(events, 0, eventCount, key);
+        nextEvent = found >= 0 ? found + 1 : -found - 1;
+    }
+
+    /**
+     * Sets the amplitude and the coefficients of the segment
+     * which contains the given position.
+     *
+     * @param k position of the harmonic
+     * @param sample sample position within the note
+     */
+    private void seed(int k, int sample) {
+        var wasMoving = (multipliers[k] != 1.0) || (increments[k] != 0.0);
+        amplitudes[k] = amplitudeAt(k, sample);
+        if (sample >= noteOff) {
+            if (sample < releaseEnd[k]) {
+                setSlope(k, releaseLevel[k], 0.0, release[k]);
+            } else {
+                setSlope(k, 0.0, 0.0, 1.0);
+            }
+        } else if (sample < attackEnd[k]) {
+            setSlope(k, 0.0, 1.0, attack[k]);
+        } else if (sample < fallEnd[k]) {
+            setSlope(k, 1.0, sustainLevel[k], fall[k]);
+        } else {
+            setSlope(k, 0.0, 0.0, 1.0);
+        }
+
+        var isMoving = (multipliers[k] != 1.0) || (increments[k] != 0.0);
+        if (isMoving != wasMoving) {
+            moving += isMoving ? 1 : -1;
+        }
+    }
+
+    /**
+     * Sets the recurrence coefficients of a segment.
+     *
+     * @param k position of the harmonic
+     * @param start gain at the segment start
+     * @param end gain at the segment end
+     * @param duration segment duration in seconds
+     */
+    private void setSlope(int k, double start, double end, double duration) {
+        var step = deltaTime / duration;
+        if (start == end) {
+            multipliers[k] = 1.0;
+            increments[k] = 0.0;
+        } else if (exponential[k]) {
+            var ratio = Math.exp(-EXPONENTIAL_RATE * step);
+            var target = loudness[k] * (start + (end - start) / EXPONENTIAL_SPAN);
+            multipliers[k] = ratio;
+            increments[k] = target * (1.0 - ratio);
+        } else {
+            multipliers[k] = 1.0;
+            increments[k] = loudness[k] * (end - start) * step;
+        }
+    }
+
+    /**
+     * Calculates the envelope gain of a harmonic from the closed form.
+     *
+     * @param k position of the harmonic
+     * @param sample sample position within the note
+     * @return gain in the range from 0 to 1
+     */
+    private double gain(int k, int sample) {
+        if (sample < noteOff) {
+            return holdGain(k, sample);
+        }
+        if (sample >= releaseEnd[k]) {
+            return 0.0;
+        }
+
+        return shape(k, releaseLevel[k], 0.0, (sample - noteOff) * deltaTime / release[k]);
+    }
+
+    /**
+     * Calculates the gain of the attack, fall and sustain
+     * segments, ignoring the end of the note sustain.
+     *
+     * @param k position of the harmonic
+     * @param sample sample position within the note
+     * @return gain in the range from 0 to 1
+     */
+    private double holdGain(int k, int sample) {
+        if (sample < attackEnd[k]) {
+            return shape(k, 0.0, 1.0, sample * deltaTime / attack[k]);
+        }
+        if (sample < fallEnd[k]) {
+            return shape(k, 1.0, sustainLevel[k], (sample - attackEnd[k]) * deltaTime / fall[k]);
+        }
+
+        return sustainLevel[k];
+    }
+
+    /**
+     * Interpolates between the start and the end gain of a segment.
+     *
+     * @param k position of the harmonic
+     * @param start gain at the segment start
+     * @param end gain at the segment end
+     * @param progress elapsed fraction of the segment
+     * @return gain
+     */
+    private double shape(int k, double start, double end, double progress) {
+        if (exponential[k]) {
+            return start + (end - start) * ((1.0 - Math.exp(-EXPONENTIAL_RATE * progress)) / EXPONENTIAL_SPAN);
+        }
+
+        return start + (end - start) * progress;
+    }
+
+    /**
+     * Converts the segment durations into sample positions
+     * and sorts the segment boundaries into the event list.
+     */
+    private void updateBoundaries() {
+        if (events.length < 3 * count) {
+            events = new long[3 * count];
+        }
+
+        eventCount = 0;
+        for (var k = 0; k < count; k++) {
+            attackEnd[k] = samples(attack[k]);
+            fallEnd[k] = attackEnd[k] + samples(fall[k]);
+            releaseEnd[k] = noteOff + samples(release[k]);
+            releaseLevel[k] = holdGain(k, noteOff);
+
+            if ((attackEnd[k] > 0) && (attackEnd[k] < noteOff)) {
+                events[eventCount++] = ((long) attackEnd[k] << 32) | k;
+            }
+            if ((fallEnd[k] > attackEnd[k]) && (fallEnd[k] < noteOff)) {
+                events[eventCount++] = ((long) fallEnd[k] << 32) | k;
+            }
+            if (releaseEnd[k] > noteOff) {
+                events[eventCount++] = ((long) releaseEnd[k] << 32) | k;
+            }
+        }
+        Arrays.sort(events, 0, eventCount);
+    }
+
+    /**
+     * Returns the number of samples until a segment has ended,
+     * the first sample whose time is at or behind the duration.
+     *
+     * @param seconds segment duration
+     * @return segment length in samples
+     */
+    private int samples(double seconds) {
+        if (seconds <= 0.0) {
+            return 0;
+        }
+
+        var n = (int) Math.ceil(seconds / deltaTime);
+        while ((n > 0) && ((n - 1) * deltaTime >= seconds)) {
+            n--;
+        }
+        while (n * deltaTime < seconds) {
+            n++;
+        }
+
+        return n;
+    }
+
+    /**
+     * Allocates all per harmonic arrays.
+     *
+     * @param size number of harmonics
+     */
+    private void allocate(int size) {
+        loudness = new double[size];
+        attack = new double[size];
+        fall = new double[size];
+        sustainLevel = new double[size];
+        release = new double[size];
+        releaseLevel = new double[size];
+        exponential = new boolean[size];
+        attackEnd = new int[size];
+        fallEnd = new int[size];
+        releaseEnd = new int[size];
+        amplitudes = new double[size];
+        multipliers = new double[size];
+        increments = new double[size];
+    }
+}
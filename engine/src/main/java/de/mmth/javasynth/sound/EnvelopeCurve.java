@@ -0,0 +1,23 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Curve shapes of the harmonic envelope segments.
+ */
+public enum EnvelopeCurve {
+    /**
+     * Constant slope from the start to the end value.
+     */
+    LINEAR,
+
+    /**
+     * Exponential approach, fast changes at the start of a
+     * segment and slow ones at its end. Reaches the end value
+     * at the end of the segment.
+     */
+    EXPONENTIAL
+}
@@ -10,11 +10,15 @@ package de.mmth.javasynth.sound;
  * Not a record since this data is not immutable.
  */
 public class Globals {
+    public static final int MIN_SAMPLE_RATE = 22050;
+    public static final int MAX_SAMPLE_RATE = 192000;
+
     private double loudness = 0.5;
     private double attack = 0.5;
     private double sustain = 0.5;
     private double pitch = 440.0;
     private int sampleRate = 44100;
+    private SampleFormat sampleFormat = SampleFormat.PCM16;
 
     /**
      * get the loudness of the given harmonic in the range from 0 to 1
@@ -88,4 +92,35 @@ public class Globals {
     public  int getSampleRate() {
         return sampleRate;
     }
+
+    /**
+     * Sets the sample rate in samples per second.
+     *
+     * @param sampleRate new sample rate in the range from 22050 to 192000
+     */
+    public void setSampleRate(int sampleRate) {
+        if ((sampleRate < MIN_SAMPLE_RATE) || (sampleRate > MAX_SAMPLE_RATE)) {
+            throw new IllegalArgumentException("Sample rate out of range: " + sampleRate);
+        }
+
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Returns the format of the output samples.
+     *
+     * @return sample format
+     */
+    public SampleFormat getSampleFormat() {
+        return sampleFormat;
+    }
+
+    /**
+     * Sets the format of the output samples.
+     *
+     * @param sampleFormat new sample format
+     */
+    public void setSampleFormat(SampleFormat sampleFormat) {
+        this.sampleFormat = sampleFormat;
+    }
 }
@@ -8,13 +8,22 @@ package de.mmth.javasynth.sound;
 /**
  * Data object of the settings of one harmonic.
  * Not a record since this data is not immutable.
+ * .
+ * Each harmonic has its own ADSR envelope: it rises within the
+ * attack time, falls to the sustain level within the fall time,
+ * holds the level until the note sustain ends and fades out
+ * within the decay (release) time. The defaults reproduce the
+ * plain decay of older patches.
  */
 public class Harmonic {
     private final int overtoneNumber;
     protected double loudness;
     protected double decay;
+    private double attack;
+    private double fall;
+    private double sustainLevel;
+    private EnvelopeCurve curve = EnvelopeCurve.LINEAR;
     private boolean active;
-    protected double delta;
 
     /**
      * Initialize the harmonic object depending
@@ -26,6 +35,7 @@ public class Harmonic {
         this.overtoneNumber = overtoneNumber;
         this.loudness = 1.0 / (overtoneNumber + 1);
         this.decay = 2.0;
+        this.sustainLevel = 1.0;
         this.active = overtoneNumber == 1;
     }
 
@@ -51,7 +61,6 @@ public class Harmonic {
      */
     public void setDecay(double decay) {
         this.decay = decay;
-        System.out.println(decay);
     }
 
     /**
@@ -62,6 +71,73 @@ public class Harmonic {
         return decay;
     }
 
+    /**
+     * Sets the attack duration of this harmonic in seconds,
+     * counted from the start of the note.
+     * @param attack new attack value
+     */
+    public void setAttack(double attack) {
+        this.attack = attack;
+    }
+
+    /**
+     * Returns the attack duration of this harmonic in seconds.
+     * @return attack value
+     */
+    public double getAttack() {
+        return attack;
+    }
+
+    /**
+     * Sets the duration of the fall from full loudness
+     * to the sustain level in seconds.
+     * @param fall new fall value
+     */
+    public void setFall(double fall) {
+        this.fall = fall;
+    }
+
+    /**
+     * Returns the fall duration of this harmonic in seconds.
+     * @return fall value
+     */
+    public double getFall() {
+        return fall;
+    }
+
+    /**
+     * Sets the sustain level relative to the loudness,
+     * in the range from 0 to 1.
+     * @param sustainLevel new sustain level
+     */
+    public void setSustainLevel(double sustainLevel) {
+        this.sustainLevel = sustainLevel;
+    }
+
+    /**
+     * Returns the sustain level relative to the loudness.
+     * @return sustain level
+     */
+    public double getSustainLevel() {
+        return sustainLevel;
+    }
+
+    /**
+     * Sets the curve shape of all envelope segments.
+     * @param curve new curve shape
+     */
+    public void setCurve(EnvelopeCurve curve) {
+        this.curve = curve;
+    }
+
+    /**
+     * Returns the curve shape of the envelope segments.
+     * @return curve shape
+     */
+    public EnvelopeCurve getCurve() {
+        return curve;
+    }
+
     /**
      * Sets the active state of this harmonic.
      * When false then the loudness will be zero
@@ -98,7 +174,11 @@ public class Harmonic {
         return "Harmonic{" +
                 "number" + overtoneNumber +
                 ", loudness=" + loudness +
+                ", attack=" + attack +
+                ", fall=" + fall +
+                ", sustainLevel=" + sustainLevel +
                 ", decay=" + decay +
+                ", curve=" + curve +
                 '}';
     }
 }
@@ -0,0 +1,149 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Immutable settings of all harmonics at the time of a snapshot.
+ * .
+ * The settings are kept as primitive parallel arrays, one entry
+ * per harmonic, so the renderers can stream through thousands of
+ * partials without following object references. The arrays are
+ * never handed out, a bank is never modified after creation.
+ */
+public final class HarmonicBank {
+    private final int[] overtoneNumbers;
+    private final double[] loudness;
+    private final double[] decay;
+    private final double[] attack;
+    private final double[] fall;
+    private final double[] sustainLevel;
+    private final EnvelopeCurve[] curve;
+    private final boolean[] active;
+
+    private HarmonicBank(int size) {
+        overtoneNumbers = new int[size];
+        loudness = new double[size];
+        decay = new double[size];
+        attack = new double[size];
+        fall = new double[size];
+        sustainLevel = new double[size];
+        curve = new EnvelopeCurve[size];
+        active = new boolean[size];
+    }
+
+    /**
+     * Creates a bank which takes over the given arrays,
+     * used when a patch is loaded in bulk. The caller must
+     * not keep or modify the arrays.
+     */
+    HarmonicBank(int[] overtoneNumbers, double[] loudness, double[] decay, double[] attack, double[] fall,
+                 double[] sustainLevel, EnvelopeCurve[] curve, boolean[] active) {
+        this.overtoneNumbers = overtoneNumbers;
+        this.loudness = loudness;
+        this.decay = decay;
+        this.attack = attack;
+        this.fall = fall;
+        this.sustainLevel = sustainLevel;
+        this.curve = curve;
+        this.active = active;
+    }
+
+    /**
+     * Copies the actual settings of the harmonics.
+     *
+     * @param harmonics array of harmonics parameters
+     * @return immutable bank
+     */
+    public static HarmonicBank of(Harmonic[] harmonics) {
+        var bank = new HarmonicBank(harmonics.length);
+        for (var i = 0; i < harmonics.length; i++) {
+            var h = harmonics[i];
+            bank.overtoneNumbers[i] = h.getOvertoneNumber();
+            bank.loudness[i] = h.getLoudness();
+            bank.decay[i] = h.getDecay();
+            bank.attack[i] = h.getAttack();
+            bank.fall[i] = h.getFall();
+            bank.sustainLevel[i] = h.getSustainLevel();
+            bank.curve[i] = h.getCurve();
+            bank.active[i] = h.getActive();
+        }
+
+        return bank;
+    }
+
+    /**
+     * Returns the number of harmonics.
+     *
+     * @return size of the bank
+     */
+    public int size() {
+        return overtoneNumbers.length;
+    }
+
+    /**
+     * Returns the number of active harmonics.
+     *
+     * @return active harmonics count
+     */
+    public int activeCount() {
+        var count = 0;
+        for (var a: active) {
+            if (a) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    public int overtoneNumber(int index) {
+        return overtoneNumbers[index];
+    }
+
+    public double loudness(int index) {
+        return loudness[index];
+    }
+
+    public double decay(int index) {
+        return decay[index];
+    }
+
+    public double attack(int index) {
+        return attack[index];
+    }
+
+    public double fall(int index) {
+        return fall[index];
+    }
+
+    public double sustainLevel(int index) {
+        return sustainLevel[index];
+    }
+
+    public EnvelopeCurve curve(int index) {
+        return curve[index];
+    }
+
+    public boolean isActive(int index) {
+        return active[index];
+    }
+
+    /**
+     * Compares the overtone number, loudness and envelope of
+     * a harmonic with the same harmonic of another bank.
+     *
+     * @param index position of the harmonic
+     * @param other bank to compare with, may be null
+     * @return true when both render the same sound
+     */
+    public boolean sameSound(int index, HarmonicBank other) {
+        return (other != null) && (index < other.size())
+                && (overtoneNumbers[index] == other.overtoneNumbers[index])
+                && (loudness[index] == other.loudness[index]) && (decay[index] == other.decay[index])
+                && (attack[index] == other.attack[index]) && (fall[index] == other.fall[index])
+                && (sustainLevel[index] == other.sustainLevel[index]) && (curve[index] == other.curve[index]);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Pre-rendered note heads of all MIDI keys.
+ * .
+ * The first HEAD_FRAMES samples of a held note are rendered
+ * for each key in the background. A voice started with a head
+ * copies these samples instead of rendering the first blocks,
+ * so a note on costs only the preparation of the voice. The
+ * heads are rendered with the same settings as the voices, the
+ * voice continues seamlessly after the head.
+ * .
+ * The heads belong to one patch version and oscillator quality,
+ * heads of other settings are never returned.
+ */
+class KeyCache {
+    static final int KEY_COUNT = 128;
+    static final int HEAD_FRAMES = 4096;
+
+    /**
+     * Pre-rendered start of one note.
+     *
+     * @param version patch version of the samples
+     * @param samples first samples of the note
+     */
+    record NoteHead(long version, double[] samples) {}
+
+    private NoteHead[] heads = new NoteHead[KEY_COUNT];
+    private OscillatorQuality quality;
+
+    /**
+     * Returns the head of a key if it was rendered
+     * with the given settings.
+     *
+     * @param key MIDI key number
+     * @param version actual patch version
+     * @param quality actual oscillator quality
+     * @return note head, null if not available
+     */
+    synchronized NoteHead get(int key, long version, OscillatorQuality quality) {
+        var head = heads[key];
+        if ((head == null) || (head.version() != version) || (this.quality != quality)) {
+            return null;
+        }
+
+        return head;
+    }
+
+    /**
+     * Returns true when the heads were rendered with the given settings.
+     *
+     * @param version actual patch version
+     * @param quality actual oscillator quality
+     * @return true when the heads are up to date
+     */
+    synchronized boolean isCurrent(long version, OscillatorQuality quality) {
+        return get(0, version, quality) != null;
+    }
+
+    /**
+     * Renders the heads of all keys and replaces the
+     * cached heads when all keys are done.
+     *
+     * @param snapshot patch settings
+     * @param quality oscillator quality of the voices
+     * @param cancelled returns true when the settings are outdated
+     * @throws CancellationException when the rendering was cancelled
+     */
+    void render(PatchSnapshot snapshot, OscillatorQuality quality, BooleanSupplier cancelled) {
+        var renderer = new AudioBuffer(() -> snapshot);
+        renderer.setVectorized(true);
+        renderer.setQuality(quality);
+        var rendered = new NoteHead[KEY_COUNT];
+        for (var key = 0; key < KEY_COUNT; key++) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("Key pre-render cancelled");
+            }
+
+            renderer.prepareHeld(MidiInput.keyToPitch(key));
+            var samples = new double[HEAD_FRAMES];
+            renderer.mix(0, HEAD_FRAMES, samples, 0);
+            rendered[key] = new NoteHead(snapshot.version(), samples);
+        }
+
+        synchronized (this) {
+            heads = rendered;
+            this.quality = quality;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with logarithmic buckets.
+ * .
+ * Bucket k counts the durations from 2^k to 2^(k+1) - 1
+ * nanoseconds, so the percentiles are exact within a factor
+ * of two. Recording needs no locks and no allocation, it may
+ * be called from the render threads while the user interface
+ * reads the values.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Adds one duration to the histogram.
+     *
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+        var value = Math.max(nanos, 1);
+        var bucket = Math.min(63 - Long.numberOfLeadingZeros(value), BUCKETS - 1);
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean of all recorded durations.
+     *
+     * @return mean in milliseconds, 0 when empty
+     */
+    public double getMean() {
+        var n = count.get();
+        return n == 0 ? 0.0 : sum.get() / (n * 1_000_000.0);
+    }
+
+    /**
+     * Returns the longest recorded duration.
+     *
+     * @return maximum in milliseconds
+     */
+    public double getMax() {
+        return max.get() / 1_000_000.0;
+    }
+
+    /**
+     * Returns the upper bound of the bucket which contains
+     * the given percentile.
+     *
+     * @param percentile percentile in the range from 0 to 100
+     * @return duration in milliseconds, 0 when empty
+     */
+    public double getPercentile(double percentile) {
+        var n = count.get();
+        if (n == 0) {
+            return 0.0;
+        }
+
+        var rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (var k = 0; k < BUCKETS; k++) {
+            seen += buckets.get(k);
+            if (seen >= rank) {
+                return Math.min(2.0 * (1L << k), max.get()) / 1_000_000.0;
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Removes all recorded durations.
+     */
+    public void reset() {
+        for (var k = 0; k < BUCKETS; k++) {
+            buckets.set(k, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                getCount(), getMean(), getPercentile(50), getPercentile(99), getMax());
+    }
+}
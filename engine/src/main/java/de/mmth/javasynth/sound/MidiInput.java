@@ -0,0 +1,147 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * MIDI keyboard input of the voice engine.
+ * .
+ * Note on messages start a held note with the pitch of the key,
+ * note off messages (or note on with velocity 0) release it.
+ * The velocity and all other messages are ignored.
+ * .
+ * The input is a receiver, it is connected to the transmitter
+ * of a MIDI device or to any other transmitter, e.g. a sequencer
+ * playing a synthetic sequence. The messages arrive on the thread
+ * of the transmitter, the note on time is taken when the message
+ * arrives.
+ */
+public class MidiInput implements Receiver {
+    private final Synthesis synthesis;
+    private final Consumer<BlockSource> output;
+    private MidiDevice device;
+
+    /**
+     * Constructor gets the synthesis and the output injected.
+     *
+     * @param synthesis receives the notes
+     * @param output called with the voice engine after each note on, e.g. to start streaming
+     */
+    public MidiInput(Synthesis synthesis, Consumer<BlockSource> output) {
+        this.synthesis = synthesis;
+        this.output = output;
+    }
+
+    /**
+     * Converts a MIDI key number into the pitch of the engine.
+     * The engine sounds harmonic n at n * pitch / 2, so the pitch
+     * is twice the equal tempered frequency of the key: key 69,
+     * the concert pitch A4 with 440 Hz, has the pitch 880 Hz.
+     *
+     * @param key MIDI key number
+     * @return pitch in hertz
+     */
+    public static double keyToPitch(int key) {
+        return 880.0 * Math.pow(2.0, (key - 69) / 12.0);
+    }
+
+    /**
+     * Returns all MIDI devices which can send notes,
+     * sequencers and synthesizers are excluded.
+     *
+     * @return device descriptions
+     */
+    public static List<MidiDevice.Info> listDevices() {
+        var inputs = new ArrayList<MidiDevice.Info>();
+        for (var info: MidiSystem.getMidiDeviceInfo()) {
+            try {
+                var device = MidiSystem.getMidiDevice(info);
+                if ((device.getMaxTransmitters() != 0) && !(device instanceof Sequencer)
+                        && !(device instanceof Synthesizer)) {
+                    inputs.add(info);
+                }
+            } catch (MidiUnavailableException e) {
+                System.out.println("MIDI device not available: " + info.getName());
+            }
+        }
+
+        return inputs;
+    }
+
+    /**
+     * Opens a MIDI device and connects it to this input,
+     * a previously opened device is closed.
+     *
+     * @param info device description
+     * @throws MidiUnavailableException when the device can not be opened
+     */
+    public synchronized void open(MidiDevice.Info info) throws MidiUnavailableException {
+        closeDevice();
+        var midiDevice = MidiSystem.getMidiDevice(info);
+        midiDevice.open();
+        try {
+            midiDevice.getTransmitter().setReceiver(this);
+        } catch (MidiUnavailableException e) {
+            midiDevice.close();
+            throw e;
+        }
+
+        device = midiDevice;
+        synthesis.setKeyPrerender(true);
+        System.out.println("MIDI input: " + info.getName());
+    }
+
+    /**
+     * Closes the opened MIDI device and silences all notes.
+     */
+    public synchronized void closeDevice() {
+        if (device != null) {
+            device.close();
+            device = null;
+            synthesis.setKeyPrerender(false);
+            synthesis.getVoices().allNotesOff();
+        }
+    }
+
+    @Override
+    public void send(MidiMessage message, long timeStamp) {
+        var noteOnTime = System.nanoTime();
+        if (!(message instanceof ShortMessage shortMessage)) {
+            return;
+        }
+
+        var key = shortMessage.getData1();
+        switch (shortMessage.getCommand()) {
+            case ShortMessage.NOTE_ON -> {
+                if (shortMessage.getData2() == 0) {
+                    synthesis.noteOff(key);
+                } else {
+                    output.accept(synthesis.noteOn(key, noteOnTime));
+                }
+            }
+            case ShortMessage.NOTE_OFF -> synthesis.noteOff(key);
+            default -> {
+                // other messages are not supported
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closeDevice();
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Calculates the sine values of all active harmonics
+ * for consecutive sample positions.
+ * .
+ * The wavetable and recursive oscillators accumulate rounding
+ * errors from sample to sample. To keep this drift bounded the
+ * oscillators are re-seeded with exact values at every multiple
+ * of RESEED_INTERVAL. A seek to another position always starts
+ * at the preceding re-seed point, so the values at a position do
+ * not depend on how a note is split into blocks. A seek forward
+ * within the actual re-seed period, e.g. to continue with the
+ * next block, advances from the actual state instead, which gives
+ * the same values without replaying the period.
+ */
+public class OscillatorBank {
+    static final int RESEED_INTERVAL = 512;
+    private static final int TABLE_SIZE = 4096;
+    private static final double[] SINE_TABLE = createSineTable();
+    private static final double TWO_PI = 2.0 * Math.PI;
+
+    private OscillatorQuality quality = OscillatorQuality.RECURSIVE;
+    private boolean vectorized;
+    private int count;
+    private int activeCount;
+    private int position;
+    private int validCount;
+    private double[] delta = new double[0];
+    private double[] values = new double[0];
+    private double[] cos = new double[0];
+    private double[] stepSin = new double[0];
+    private double[] stepCos = new double[0];
+    private double[] phase = new double[0];
+    private double[] phaseStep = new double[0];
+
+    /**
+     * Returns the actual quality tier.
+     *
+     * @return oscillator quality
+     */
+    public OscillatorQuality getQuality() {
+        return quality;
+    }
+
+    /**
+     * Sets the quality tier, used from the next seek on.
+     *
+     * @param quality oscillator quality
+     */
+    public void setQuality(OscillatorQuality quality) {
+        this.quality = quality;
+        validCount = 0;
+    }
+
+    /**
+     * Selects the Vector API kernel for the recursive oscillators.
+     * The caller has to check the availability of the Vector API.
+     *
+     * @param vectorized true to use the Vector API kernel
+     */
+    public void setVectorized(boolean vectorized) {
+        this.vectorized = vectorized;
+        validCount = 0;
+    }
+
+    /**
+     * Sets the phase increments of the oscillators.
+     *
+     * @param deltas phase increment per sample of each oscillator
+     * @param count number of used oscillators
+     */
+    public void setup(double[] deltas, int count) {
+        if (delta.length < count) {
+            delta = new double[count];
+            values = new double[count];
+            cos = new double[count];
+            stepSin = new double[count];
+            stepCos = new double[count];
+            phase = new double[count];
+            phaseStep = new double[count];
+        }
+
+        this.count = count;
+        activeCount = count;
+        validCount = 0;
+        for (var k = 0; k < count; k++) {
+            delta[k] = deltas[k];
+            stepSin[k] = Math.sin(deltas[k]);
+            stepCos[k] = Math.cos(deltas[k]);
+            var cycles = deltas[k] / TWO_PI;
+            phaseStep[k] = (cycles - Math.floor(cycles)) * TABLE_SIZE;
+        }
+    }
+
+    /**
+     * Limits the calculation to the first oscillators, e.g. when
+     * the other harmonics have finished their decay. Used from the
+     * next seek on, the values of the other oscillators are invalid.
+     *
+     * @param activeCount number of calculated oscillators
+     */
+    public void setActiveCount(int activeCount) {
+        this.activeCount = Math.min(activeCount, count);
+        validCount = Math.min(validCount, this.activeCount);
+    }
+
+    /**
+     * Creates a bank with the same quality and phase increments,
+     * used for rendering in another thread.
+     *
+     * @return independent copy of this bank
+     */
+    public OscillatorBank copy() {
+        var bank = new OscillatorBank();
+        bank.setQuality(quality);
+        bank.setVectorized(vectorized);
+        bank.setup(delta, count);
+        return bank;
+    }
+
+    /**
+     * Returns the sine values at the actual position,
+     * one entry per oscillator.
+     *
+     * @return sine values, only valid up to the oscillator count
+     */
+    public double[] values() {
+        return values;
+    }
+
+    /**
+     * Moves all oscillators to the given sample position.
+     *
+     * @param position sample position
+     */
+    public void seek(int position) {
+        if (quality == OscillatorQuality.EXACT) {
+            this.position = position;
+            calcExact();
+            return;
+        }
+
+        var continues = (validCount == activeCount) && (position >= this.position)
+                && ((position / RESEED_INTERVAL) == (this.position / RESEED_INTERVAL));
+        if (!continues) {
+            this.position = position - (position % RESEED_INTERVAL);
+            seed();
+            validCount = activeCount;
+        }
+        while (this.position < position) {
+            advance();
+        }
+    }
+
+    /**
+     * Moves all oscillators to the next sample position.
+     */
+    public void next() {
+        if (quality == OscillatorQuality.EXACT) {
+            position++;
+            calcExact();
+        } else if (((position + 1) % RESEED_INTERVAL) == 0) {
+            position++;
+            seed();
+        } else {
+            advance();
+        }
+    }
+
+    /**
+     * Calculates exact values at the actual position.
+     */
+    private void calcExact() {
+        for (var k = 0; k < activeCount; k++) {
+            values[k] = Math.sin(delta[k] * position);
+        }
+    }
+
+    /**
+     * Sets the oscillator state to exact values at the actual position.
+     */
+    private void seed() {
+        for (var k = 0; k < activeCount; k++) {
+            var angle = delta[k] * position;
+            if (quality == OscillatorQuality.WAVETABLE) {
+                var cycles = angle / TWO_PI;
+                var p = (cycles - Math.floor(cycles)) * TABLE_SIZE;
+                phase[k] = p < TABLE_SIZE ? p : 0.0;
+                values[k] = interpolate(phase[k]);
+            } else {
+                values[k] = Math.sin(angle);
+                cos[k] = Math.cos(angle);
+            }
+        }
+    }
+
+    /**
+     * Advances the oscillator state by one sample.
+     */
+    private void advance() {
+        position++;
+        if (quality == OscillatorQuality.WAVETABLE) {
+            for (var k = 0; k < activeCount; k++) {
+                var p = phase[k] + phaseStep[k];
+                if (p >= TABLE_SIZE) {
+                    p -= TABLE_SIZE;
+                }
+                phase[k] = p;
+                values[k] = interpolate(p);
+            }
+        } else if (vectorized) {
+            VectorKernel.rotate(values, cos, stepSin, stepCos, activeCount);
+        } else {
+            for (var k = 0; k < activeCount; k++) {
+                var s = values[k];
+                var c = cos[k];
+                values[k] = s * stepCos[k] + c * stepSin[k];
+                cos[k] = c * stepCos[k] - s * stepSin[k];
+            }
+        }
+    }
+
+    /**
+     * Reads the sine table with linear interpolation.
+     *
+     * @param tablePhase phase in table entries
+     * @return sine value
+     */
+    private static double interpolate(double tablePhase) {
+        var index = (int) tablePhase;
+        var fraction = tablePhase - index;
+        var low = SINE_TABLE[index];
+        return low + fraction * (SINE_TABLE[index + 1] - low);
+    }
+
+    /**
+     * Creates one sine period with a guard entry for the interpolation.
+     *
+     * @return sine table
+     */
+    private static double[] createSineTable() {
+        var table = new double[TABLE_SIZE + 1];
+        for (var i = 0; i <= TABLE_SIZE; i++) {
+            table[i] = Math.sin(TWO_PI * i / TABLE_SIZE);
+        }
+
+        return table;
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Quality tiers of the oscillator bank.
+ */
+public enum OscillatorQuality {
+    /**
+     * Calls Math.sin for every harmonic and sample,
+     * reference for the other tiers.
+     */
+    EXACT,
+
+    /**
+     * Linear interpolation in a sine table with
+     * a phase accumulator per harmonic.
+     */
+    WAVETABLE,
+
+    /**
+     * Rotates a sine/cosine pair per harmonic by a
+     * constant angle, one multiply-add per value.
+     */
+    RECURSIVE
+}
@@ -0,0 +1,56 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hands the patch settings from the user interface thread
+ * to the render threads without locks.
+ * .
+ * The user interface thread is the single writer: after each
+ * change of the globals or harmonics it publishes a new immutable
+ * snapshot. Render threads read the latest snapshot at block
+ * boundaries, a snapshot is never modified after publishing.
+ */
+public class ParameterStore implements Supplier<PatchSnapshot> {
+    private final Globals globals;
+    private final Harmonic[] harmonics;
+    private final AtomicReference<PatchSnapshot> current = new AtomicReference<>();
+    private long version;
+
+    /**
+     * Constructor gets the mutable settings injected
+     * and publishes the first snapshot.
+     *
+     * @param globals global parameter
+     * @param harmonics array of harmonics parameters
+     */
+    public ParameterStore(Globals globals, Harmonic[] harmonics) {
+        this.globals = globals;
+        this.harmonics = harmonics;
+        publish();
+    }
+
+    /**
+     * Publishes a snapshot of the actual settings.
+     * Must only be called from the writer thread.
+     */
+    public void publish() {
+        current.set(PatchSnapshot.of(++version, globals, harmonics));
+    }
+
+    /**
+     * Returns the latest published snapshot.
+     *
+     * @return patch snapshot
+     */
+    @Override
+    public PatchSnapshot get() {
+        return current.get();
+    }
+}
@@ -0,0 +1,421 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Preset bank file with patches in a fixed binary layout.
+ * .
+ * The file starts with a header and an index of fixed size
+ * entries, followed by the patch records. The index is memory
+ * mapped, so browsing the names of a bank never reads a patch.
+ * A patch is loaded with one positional read of its record and
+ * bulk copies into the harmonic arrays, there is nothing to parse.
+ * .
+ * Layout, all values little endian:
+ * header (64 bytes): magic, format version, capacity, patch count, data end;
+ * index entry (64 bytes): name (48 bytes UTF-8, zero padded), record offset,
+ * number of harmonics, record length;
+ * patch record: loudness, attack, sustain, pitch, sample rate, sample format,
+ * number of harmonics n, then the arrays loudness[n], decay[n], attack[n],
+ * fall[n], sustain level[n] (double), overtone number[n] (int),
+ * active[n], curve[n] (byte), padded to 8 bytes. A record holds at
+ * most MAX_HARMONICS harmonics.
+ * .
+ * The records are also used standalone, e.g. to send a patch
+ * to the render server.
+ * .
+ * The capacity of the index is fixed when the bank is created,
+ * patches are appended until the index is full. The patch count
+ * is written last, so an interrupted append leaves the bank intact.
+ */
+public final class PatchBank implements Closeable {
+    public static final int FORMAT_VERSION = 1;
+    public static final int MAX_NAME_BYTES = 48;
+    public static final int MAX_HARMONICS = 1 << 20;
+    private static final int MAGIC = 0x4B50534A;
+    private static final int HEADER_SIZE = 64;
+    private static final int ENTRY_SIZE = 64;
+    private static final int RECORD_HEADER_SIZE = 48;
+    private static final int CAPACITY_POS = 8;
+    private static final int COUNT_POS = 12;
+    private static final int DATA_END_POS = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer index;
+    private final boolean writable;
+    private final int capacity;
+
+    private PatchBank(FileChannel channel, boolean writable, int capacity) throws IOException {
+        this.channel = channel;
+        this.writable = writable;
+        this.capacity = capacity;
+        var mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        index = channel.map(mode, 0, dataStart(capacity));
+        index.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates an empty bank, an existing file is overwritten.
+     *
+     * @param file bank file
+     * @param capacity maximum number of patches
+     * @return writable bank
+     * @throws IOException when the file can not be created
+     */
+    public static PatchBank create(Path file, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Patch bank capacity out of range: " + capacity);
+        }
+
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            var bank = new PatchBank(channel, true, capacity);
+            bank.index.putInt(0, MAGIC);
+            bank.index.putInt(4, FORMAT_VERSION);
+            bank.index.putInt(CAPACITY_POS, capacity);
+            bank.index.putInt(COUNT_POS, 0);
+            bank.index.putLong(DATA_END_POS, dataStart(capacity));
+            return bank;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing bank.
+     *
+     * @param file bank file
+     * @param writable true to append patches
+     * @return bank
+     * @throws IOException when the file can not be read or is no patch bank
+     */
+    public static PatchBank open(Path file, boolean writable) throws IOException {
+        var channel = writable
+                ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a patch bank: " + file);
+            }
+            if (header.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Unsupported patch bank version " + header.getInt(4) + ": " + file);
+            }
+
+            var capacity = header.getInt(CAPACITY_POS);
+            var count = header.getInt(COUNT_POS);
+            if ((capacity < 1) || (dataStart(capacity) > channel.size()) || (count < 0) || (count > capacity)) {
+                throw new IOException("Corrupt patch bank index: " + file);
+            }
+            return new PatchBank(channel, writable, capacity);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of patches in the bank.
+     *
+     * @return patch count
+     */
+    public int size() {
+        return index.getInt(COUNT_POS);
+    }
+
+    /**
+     * Returns the maximum number of patches of the bank.
+     *
+     * @return index capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the name of a patch, read from the index only.
+     *
+     * @param patch patch number
+     * @return patch name
+     */
+    public String getName(int patch) {
+        var entry = entry(patch);
+        var length = 0;
+        while ((length < MAX_NAME_BYTES) && (index.get(entry + length) != 0)) {
+            length++;
+        }
+
+        var name = new byte[length];
+        index.get(entry, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of harmonics of a patch, read from the index only.
+     *
+     * @param patch patch number
+     * @return number of harmonics
+     */
+    public int getHarmonicCount(int patch) {
+        return index.getInt(entry(patch) + MAX_NAME_BYTES + 8);
+    }
+
+    /**
+     * Returns the number of the first patch with the given name.
+     *
+     * @param name patch name
+     * @return patch number, -1 if not found
+     */
+    public int find(String name) {
+        for (var patch = 0; patch < size(); patch++) {
+            if (getName(patch).equals(name)) {
+                return patch;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Loads a patch: one read of the record and bulk copies
+     * into the arrays of the harmonic bank.
+     *
+     * @param patch patch number
+     * @return patch settings, version 0
+     * @throws IOException when the record can not be read or is corrupt
+     */
+    public PatchSnapshot load(int patch) throws IOException {
+        var entry = entry(patch);
+        var offset = index.getLong(entry + MAX_NAME_BYTES);
+        var count = index.getInt(entry + MAX_NAME_BYTES + 8);
+        var length = index.getInt(entry + MAX_NAME_BYTES + 12);
+        if ((count < 0) || (count > MAX_HARMONICS) || (length != recordLength(count))) {
+            throw new IOException("Corrupt patch record: " + getName(patch));
+        }
+
+        var record = ByteBuffer.allocate(length);
+        readFully(channel, record, offset);
+        return decode(record);
+    }
+
+    /**
+     * Appends a patch to the bank.
+     *
+     * @param name patch name, at most MAX_NAME_BYTES bytes UTF-8
+     * @param patch patch settings
+     * @return patch number
+     * @throws IOException when the record can not be written
+     */
+    public synchronized int add(String name, PatchSnapshot patch) throws IOException {
+        if (!writable) {
+            throw new IllegalStateException("Patch bank is read only");
+        }
+        var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if ((nameBytes.length == 0) || (nameBytes.length > MAX_NAME_BYTES)) {
+            throw new IllegalArgumentException("Patch name length out of range: " + name);
+        }
+        var number = size();
+        if (number >= capacity) {
+            throw new IllegalStateException("Patch bank is full: " + capacity + " patches");
+        }
+
+        var record = ByteBuffer.wrap(encode(patch));
+        var offset = index.getLong(DATA_END_POS);
+        while (record.hasRemaining()) {
+            channel.write(record, offset + record.position());
+        }
+
+        var length = record.capacity();
+        var entry = HEADER_SIZE + number * ENTRY_SIZE;
+        index.put(entry, new byte[MAX_NAME_BYTES]);
+        index.put(entry, nameBytes);
+        index.putLong(entry + MAX_NAME_BYTES, offset);
+        index.putInt(entry + MAX_NAME_BYTES + 8, patch.harmonics().size());
+        index.putInt(entry + MAX_NAME_BYTES + 12, length);
+        index.putLong(DATA_END_POS, offset + length);
+        index.putInt(COUNT_POS, number + 1);
+        return number;
+    }
+
+    /**
+     * Converts a patch into a record of the binary patch format,
+     * e.g. to send it to another process.
+     *
+     * @param patch patch settings, at most MAX_HARMONICS harmonics
+     * @return patch record
+     */
+    public static byte[] encode(PatchSnapshot patch) {
+        var harmonics = patch.harmonics();
+        var count = harmonics.size();
+        if (count > MAX_HARMONICS) {
+            throw new IllegalArgumentException("Too many harmonics for a patch record: " + count);
+        }
+        var record = ByteBuffer.allocate((int) recordLength(count)).order(ByteOrder.LITTLE_ENDIAN);
+        record.putDouble(patch.loudness()).putDouble(patch.attack()).putDouble(patch.sustain())
+                .putDouble(patch.pitch()).putInt(patch.sampleRate()).putInt(patch.sampleFormat().ordinal())
+                .putInt(count);
+        record.position(RECORD_HEADER_SIZE);
+        for (var i = 0; i < count; i++) {
+            record.putDouble(harmonics.loudness(i));
+        }
+        for (var i = 0; i < count; i++) {
+            record.putDouble(harmonics.decay(i));
+        }
+        for (var i = 0; i < count; i++) {
+            record.putDouble(harmonics.attack(i));
+        }
+        for (var i = 0; i < count; i++) {
+            record.putDouble(harmonics.fall(i));
+        }
+        for (var i = 0; i < count; i++) {
+            record.putDouble(harmonics.sustainLevel(i));
+        }
+        for (var i = 0; i < count; i++) {
+            record.putInt(harmonics.overtoneNumber(i));
+        }
+        for (var i = 0; i < count; i++) {
+            record.put((byte) (harmonics.isActive(i) ? 1 : 0));
+        }
+        for (var i = 0; i < count; i++) {
+            record.put((byte) harmonics.curve(i).ordinal());
+        }
+
+        return record.array();
+    }
+
+    /**
+     * Converts a record of the binary patch format into a patch,
+     * the arrays are bulk copied into the harmonic bank.
+     *
+     * @param record patch record from position 0 to the limit
+     * @return patch settings, version 0
+     * @throws IOException when the record is corrupt
+     */
+    public static PatchSnapshot decode(ByteBuffer record) throws IOException {
+        record.order(ByteOrder.LITTLE_ENDIAN);
+        if (record.limit() < RECORD_HEADER_SIZE) {
+            throw new IOException("Corrupt patch record: too short");
+        }
+
+        var count = record.getInt(40);
+        var sampleRate = record.getInt(32);
+        var format = record.getInt(36);
+        if ((count < 0) || (count > MAX_HARMONICS) || (record.limit() != recordLength(count)) || (format < 0)
+                || (format >= SampleFormat.values().length)
+                || (sampleRate < Globals.MIN_SAMPLE_RATE) || (sampleRate > Globals.MAX_SAMPLE_RATE)) {
+            throw new IOException("Corrupt patch record");
+        }
+
+        var loudness = new double[count];
+        var decay = new double[count];
+        var attack = new double[count];
+        var fall = new double[count];
+        var sustainLevel = new double[count];
+        var doubles = record.position(RECORD_HEADER_SIZE).asDoubleBuffer();
+        doubles.get(loudness).get(decay).get(attack).get(fall).get(sustainLevel);
+
+        var overtoneNumbers = new int[count];
+        record.position(RECORD_HEADER_SIZE + 5 * 8 * count).asIntBuffer().get(overtoneNumbers);
+
+        var flags = new byte[2 * count];
+        record.position(RECORD_HEADER_SIZE + 5 * 8 * count + 4 * count).get(flags);
+        var curves = EnvelopeCurve.values();
+        var active = new boolean[count];
+        var curve = new EnvelopeCurve[count];
+        for (var i = 0; i < count; i++) {
+            active[i] = flags[i] != 0;
+            var ordinal = flags[count + i];
+            if ((ordinal < 0) || (ordinal >= curves.length)) {
+                throw new IOException("Corrupt patch record: curve " + ordinal);
+            }
+            curve[i] = curves[ordinal];
+        }
+
+        var harmonics = new HarmonicBank(overtoneNumbers, loudness, decay, attack, fall, sustainLevel, curve, active);
+        return new PatchSnapshot(0, record.getDouble(0), record.getDouble(8), record.getDouble(16),
+                record.getDouble(24), sampleRate, SampleFormat.values()[format], harmonics);
+    }
+
+    /**
+     * Writes the index of a writable bank and closes the file.
+     *
+     * @throws IOException when the file can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (writable) {
+            index.force();
+        }
+        channel.close();
+    }
+
+    /**
+     * Returns the index position of a patch entry.
+     *
+     * @param patch patch number
+     * @return byte position in the index
+     */
+    private int entry(int patch) {
+        if ((patch < 0) || (patch >= size())) {
+            throw new IllegalArgumentException("Patch number out of range: " + patch);
+        }
+
+        return HEADER_SIZE + patch * ENTRY_SIZE;
+    }
+
+    /**
+     * Returns the file position of the first patch record.
+     *
+     * @param capacity maximum number of patches
+     * @return size of header and index
+     */
+    private static long dataStart(int capacity) {
+        return HEADER_SIZE + (long) capacity * ENTRY_SIZE;
+    }
+
+    /**
+     * Returns the length of a patch record, padded to 8 bytes.
+     * Calculated in long, so a corrupt count can not overflow
+     * into a valid length.
+     *
+     * @param count number of harmonics
+     * @return record length in bytes
+     */
+    private static long recordLength(int count) {
+        var length = RECORD_HEADER_SIZE + (5L * 8 + 4 + 2) * count;
+        return (length + 7) & ~7L;
+    }
+
+    /**
+     * Reads until the buffer is full.
+     *
+     * @param channel source file
+     * @param buffer destination buffer
+     * @param position file position
+     * @throws IOException when the file ends before the buffer is full
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of patch bank");
+            }
+        }
+        buffer.clear();
+    }
+}
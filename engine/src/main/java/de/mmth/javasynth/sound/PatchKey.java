@@ -0,0 +1,96 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.util.Arrays;
+
+/**
+ * Immutable canonical snapshot of all parameters which
+ * influence the rendered sound, used as render cache key.
+ * Besides the patch these are the render settings of the
+ * audio buffer: oscillator quality, render method and cull
+ * threshold.
+ * .
+ * Inactive harmonics are left out and the global attack and
+ * sustain are stored with the length the audio buffer renders,
+ * so settings which render the same sound map to the same key.
+ */
+public final class PatchKey {
+    private final long[] values;
+    private final int hash;
+
+    /**
+     * Constructor with the canonical parameter values.
+     *
+     * @param values parameter values as double bits
+     */
+    private PatchKey(long[] values) {
+        this.values = values;
+        this.hash = Arrays.hashCode(values);
+    }
+
+    /**
+     * Creates the key of the actual settings.
+     *
+     * @param patch patch settings
+     * @param quality oscillator quality
+     * @param renderMethod synthesis method
+     * @param cullThreshold cull threshold in dB
+     * @return cache key
+     */
+    public static PatchKey of(PatchSnapshot patch, OscillatorQuality quality, RenderMethod renderMethod,
+                              double cullThreshold) {
+        var harmonics = patch.harmonics();
+        var values = new long[9 + 7 * harmonics.activeCount()];
+        var pos = 0;
+        values[pos++] = quality.ordinal();
+        values[pos++] = renderMethod.ordinal();
+        values[pos++] = bits(cullThreshold);
+        values[pos++] = patch.sampleRate();
+        values[pos++] = patch.sampleFormat().ordinal();
+        values[pos++] = bits(patch.loudness());
+        values[pos++] = bits(AudioBuffer.renderedSegment(patch.attack()));
+        values[pos++] = bits(AudioBuffer.renderedSegment(patch.sustain()));
+        values[pos++] = bits(patch.pitch());
+        for (var i = 0; i < harmonics.size(); i++) {
+            if (harmonics.isActive(i)) {
+                values[pos++] = harmonics.overtoneNumber(i);
+                values[pos++] = bits(harmonics.loudness(i));
+                values[pos++] = bits(harmonics.decay(i));
+                values[pos++] = bits(harmonics.attack(i));
+                values[pos++] = bits(harmonics.fall(i));
+                values[pos++] = bits(harmonics.sustainLevel(i));
+                values[pos++] = harmonics.curve(i).ordinal();
+            }
+        }
+
+        return new PatchKey(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        return (o instanceof PatchKey other) && (hash == other.hash) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Converts a value into its bit pattern, -0.0 and 0.0 are equal.
+     *
+     * @param value parameter value
+     * @return bit pattern
+     */
+    private static long bits(double value) {
+        return Double.doubleToLongBits(value + 0.0);
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Immutable settings of the whole patch at the time of a snapshot.
+ * Snapshots are handed from the user interface to the render
+ * threads, so a renderer never sees a half updated patch.
+ *
+ * @param version sequence number, increases with every published snapshot
+ * @param loudness global loudness in the range from 0 to 1
+ * @param attack attack duration in seconds
+ * @param sustain sustain duration in seconds
+ * @param pitch pitch frequency in hertz
+ * @param sampleRate samples per second
+ * @param sampleFormat format of the output samples
+ * @param harmonics settings of all harmonics
+ */
+public record PatchSnapshot(long version, double loudness, double attack, double sustain,
+                            double pitch, int sampleRate, SampleFormat sampleFormat,
+                            HarmonicBank harmonics) {
+
+    /**
+     * Creates the snapshot of the actual settings.
+     *
+     * @param version sequence number of the snapshot
+     * @param globals global parameter
+     * @param harmonics array of harmonics parameters
+     * @return immutable copy
+     */
+    public static PatchSnapshot of(long version, Globals globals, Harmonic[] harmonics) {
+        return new PatchSnapshot(version, globals.getLoudness(), globals.getAttack(), globals.getSustain(),
+                globals.getPitch(), globals.getSampleRate(), globals.getSampleFormat(), HarmonicBank.of(harmonics));
+    }
+
+    /**
+     * Returns a copy of this snapshot with another output format,
+     * e.g. for renderers bound to an open output line.
+     *
+     * @param sampleRate samples per second
+     * @param sampleFormat format of the output samples
+     * @return snapshot with the given output format
+     */
+    public PatchSnapshot withOutput(int sampleRate, SampleFormat sampleFormat) {
+        if ((sampleRate == this.sampleRate) && (sampleFormat == this.sampleFormat)) {
+            return this;
+        }
+
+        return new PatchSnapshot(version, loudness, attack, sustain, pitch, sampleRate, sampleFormat, harmonics);
+    }
+}
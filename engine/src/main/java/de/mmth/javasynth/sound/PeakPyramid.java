@@ -0,0 +1,184 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Multi resolution overview of a sound, like the overview
+ * files of audio workstations.
+ * .
+ * Level 0 holds minimum, maximum and sum of squares of blocks
+ * of BASE_BLOCK samples, each further level combines two blocks
+ * of the level below. A view with a given number of samples per
+ * column reads the coarsest level with blocks not larger than a
+ * column, so drawing costs O(width) regardless of the sound length.
+ */
+public class PeakPyramid {
+    static final int BASE_BLOCK = 64;
+
+    private final int sampleCount;
+    private final Level[] levels;
+
+    /**
+     * Constructor with the calculated levels.
+     *
+     * @param sampleCount number of samples of the sound
+     * @param levels pyramid levels, finest first
+     */
+    private PeakPyramid(int sampleCount, Level[] levels) {
+        this.sampleCount = sampleCount;
+        this.levels = levels;
+    }
+
+    /**
+     * Builds the pyramid of 16 bit little endian audio data.
+     *
+     * @param buffer audio data
+     * @return peak pyramid
+     */
+    public static PeakPyramid fromPcm16(byte[] buffer) {
+        return of(buffer, SampleFormat.PCM16);
+    }
+
+    /**
+     * Builds the pyramid of audio data in the given format.
+     * The values are scaled to the 16 bit range.
+     *
+     * @param buffer audio data
+     * @param sampleFormat format of the audio data
+     * @return peak pyramid
+     */
+    public static PeakPyramid of(byte[] buffer, SampleFormat sampleFormat) {
+        var bytes = sampleFormat.getBytes();
+        var samples = buffer.length / bytes;
+        var base = new Level(BASE_BLOCK, (samples + BASE_BLOCK - 1) / BASE_BLOCK);
+        var bytePos = 0;
+        for (var block = 0; block < base.size(); block++) {
+            var end = Math.min(samples, (block + 1) * BASE_BLOCK);
+            var min = Short.MAX_VALUE;
+            var max = Short.MIN_VALUE;
+            var squares = 0.0;
+            for (var i = block * BASE_BLOCK; i < end; i++) {
+                var value = sampleFormat.decode16(buffer, bytePos);
+                bytePos += bytes;
+                min = (short) Math.min(min, value);
+                max = (short) Math.max(max, value);
+                squares += (double) value * value;
+            }
+            base.min[block] = min;
+            base.max[block] = max;
+            base.squares[block] = squares;
+        }
+
+        var levelCount = 1;
+        for (var size = base.size(); size > 1; size = (size + 1) / 2) {
+            levelCount++;
+        }
+
+        var levels = new Level[levelCount];
+        levels[0] = base;
+        for (var l = 1; l < levelCount; l++) {
+            levels[l] = levels[l - 1].combine();
+        }
+
+        return new PeakPyramid(samples, levels);
+    }
+
+    /**
+     * Returns the number of samples of the sound.
+     *
+     * @return sample count
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Calculates minimum, maximum and RMS value of each column
+     * of a view window. Values are scaled to the range from -1 to 1.
+     *
+     * @param start first sample of the view window
+     * @param length number of samples of the view window
+     * @param width number of columns
+     * @param min destination of the column minimum
+     * @param max destination of the column maximum
+     * @param rms destination of the column RMS value
+     */
+    public void columns(double start, double length, int width, float[] min, float[] max, float[] rms) {
+        var samplesPerColumn = length / width;
+        var level = levels[0];
+        for (var l = levels.length - 1; l > 0; l--) {
+            if (levels[l].blockSize <= samplesPerColumn) {
+                level = levels[l];
+                break;
+            }
+        }
+
+        for (var column = 0; column < width; column++) {
+            var first = start + column * samplesPerColumn;
+            var firstBlock = (int) Math.max(0, Math.floor(first / level.blockSize));
+            var endBlock = (int) Math.min(level.size(), Math.ceil((first + samplesPerColumn) / level.blockSize));
+            var columnMin = 0;
+            var columnMax = 0;
+            var squares = 0.0;
+            var count = 0L;
+            for (var block = firstBlock; block < endBlock; block++) {
+                columnMin = Math.min(columnMin, level.min[block]);
+                columnMax = Math.max(columnMax, level.max[block]);
+                squares += level.squares[block];
+                count += Math.min(level.blockSize, sampleCount - (long) block * level.blockSize);
+            }
+
+            min[column] = (float) columnMin / Short.MAX_VALUE;
+            max[column] = (float) columnMax / Short.MAX_VALUE;
+            rms[column] = count > 0 ? (float) (Math.sqrt(squares / count) / Short.MAX_VALUE) : 0.0f;
+        }
+    }
+
+    /**
+     * One level of the pyramid.
+     */
+    private static class Level {
+        final int blockSize;
+        final short[] min;
+        final short[] max;
+        final double[] squares;
+
+        /**
+         * Creates an empty level.
+         *
+         * @param blockSize samples per block
+         * @param size number of blocks
+         */
+        Level(int blockSize, int size) {
+            this.blockSize = blockSize;
+            min = new short[size];
+            max = new short[size];
+            squares = new double[size];
+        }
+
+        int size() {
+            return min.length;
+        }
+
+        /**
+         * Creates the next coarser level.
+         *
+         * @return level with half the number of blocks
+         */
+        Level combine() {
+            var next = new Level(2 * blockSize, (size() + 1) / 2);
+            for (var i = 0; i < next.size(); i++) {
+                var left = 2 * i;
+                var right = Math.min(left + 1, size() - 1);
+                next.min[i] = (short) Math.min(min[left], min[right]);
+                next.max[i] = (short) Math.max(max[left], max[right]);
+                next.squares[i] = squares[left] + (right != left ? squares[right] : 0.0);
+            }
+
+            return next;
+        }
+    }
+}
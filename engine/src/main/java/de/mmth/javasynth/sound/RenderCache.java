@@ -0,0 +1,139 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of rendered notes keyed by the patch settings.
+ * .
+ * The total size of the cached buffers is limited by a byte
+ * budget, the least recently used notes are evicted first.
+ * Cached buffers are shared and must not be modified.
+ */
+public class RenderCache {
+    private final LinkedHashMap<PatchKey, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor with the byte budget.
+     *
+     * @param maxBytes maximum size of all cached buffers
+     */
+    public RenderCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Looks up a rendered note and counts the hit or miss.
+     *
+     * @param key patch settings
+     * @return cached audio data or null
+     */
+    public synchronized byte[] get(PatchKey key) {
+        var data = entries.get(key);
+        if (data == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return data;
+    }
+
+    /**
+     * Adds a rendered note. Notes larger than the whole
+     * budget are not cached.
+     *
+     * @param key patch settings
+     * @param data audio data, must not be modified afterwards
+     */
+    public synchronized void put(PatchKey key, byte[] data) {
+        if (data.length > maxBytes) {
+            return;
+        }
+
+        var old = entries.put(key, data);
+        if (old != null) {
+            usedBytes -= old.length;
+        }
+        usedBytes += data.length;
+        evict();
+    }
+
+    /**
+     * Changes the byte budget, evicts notes when necessary.
+     *
+     * @param maxBytes maximum size of all cached buffers
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Removes all cached notes, the statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Removes the least recently used notes until the
+     * used bytes fit into the budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<PatchKey, byte[]>> iterator = entries.entrySet().iterator();
+        while ((usedBytes > maxBytes) && iterator.hasNext()) {
+            usedBytes -= iterator.next().getValue().length;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RenderCache{" +
+                "entries=" + entries.size() +
+                ", usedBytes=" + usedBytes +
+                ", maxBytes=" + maxBytes +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
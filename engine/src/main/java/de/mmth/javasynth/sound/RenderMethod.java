@@ -0,0 +1,28 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Synthesis methods of the audio buffer.
+ */
+public enum RenderMethod {
+    /**
+     * Selects the spectral method for notes with many
+     * partials, the direct method otherwise.
+     */
+    AUTO,
+
+    /**
+     * Sums the oscillators of all partials for every sample.
+     */
+    DIRECT,
+
+    /**
+     * Inverse FFT with overlap-add, the cost does not grow
+     * with the number of partials per sample.
+     */
+    SPECTRAL
+}
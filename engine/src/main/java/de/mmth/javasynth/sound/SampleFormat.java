@@ -0,0 +1,167 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+
+/**
+ * Output sample formats of the synthesis.
+ * .
+ * All renderers mix into a double mix bus, the conversion
+ * into the output format is done in one pass per block.
+ * Values outside the range from -1 to 1 are clipped, all
+ * formats are mono and little endian.
+ */
+public enum SampleFormat {
+    /**
+     * 16 bit signed integer samples.
+     */
+    PCM16(2),
+
+    /**
+     * 24 bit signed integer samples.
+     */
+    PCM24(3),
+
+    /**
+     * 32 bit IEEE float samples.
+     */
+    FLOAT32(4);
+
+    private static final double PCM16_SCALE = Short.MAX_VALUE;
+    private static final double PCM24_SCALE = (1 << 23) - 1;
+
+    private final int bytes;
+
+    SampleFormat(int bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns the size of one sample.
+     *
+     * @return bytes per sample
+     */
+    public int getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Creates the mono audio format of this sample format.
+     *
+     * @param sampleRate samples per second
+     * @return audio format
+     */
+    public AudioFormat createFormat(int sampleRate) {
+        var encoding = this == FLOAT32 ? AudioFormat.Encoding.PCM_FLOAT : AudioFormat.Encoding.PCM_SIGNED;
+        return new AudioFormat(encoding, sampleRate, 8 * bytes, 1, bytes, sampleRate, false);
+    }
+
+    /**
+     * Converts mix bus values into samples of this format.
+     *
+     * @param bus source mix bus
+     * @param count number of samples
+     * @param dest destination byte buffer
+     * @param bytePos first byte position in the destination buffer
+     */
+    public void encode(double[] bus, int count, byte[] dest, int bytePos) {
+        switch (this) {
+            case PCM16 -> {
+                for (var i = 0; i < count; i++) {
+                    var value = (int) (clip(bus[i]) * PCM16_SCALE);
+                    dest[bytePos++] = (byte) value;
+                    dest[bytePos++] = (byte) (value >> 8);
+                }
+            }
+            case PCM24 -> {
+                for (var i = 0; i < count; i++) {
+                    var value = (int) (clip(bus[i]) * PCM24_SCALE);
+                    dest[bytePos++] = (byte) value;
+                    dest[bytePos++] = (byte) (value >> 8);
+                    dest[bytePos++] = (byte) (value >> 16);
+                }
+            }
+            case FLOAT32 -> {
+                for (var i = 0; i < count; i++) {
+                    var value = Float.floatToRawIntBits((float) clip(bus[i]));
+                    dest[bytePos++] = (byte) value;
+                    dest[bytePos++] = (byte) (value >> 8);
+                    dest[bytePos++] = (byte) (value >> 16);
+                    dest[bytePos++] = (byte) (value >> 24);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts mix bus values into samples of this format
+     * at the position of the byte buffer.
+     *
+     * @param bus source mix bus
+     * @param count number of samples
+     * @param dest destination byte buffer
+     */
+    public void encode(double[] bus, int count, ByteBuffer dest) {
+        switch (this) {
+            case PCM16 -> {
+                for (var i = 0; i < count; i++) {
+                    var value = (int) (clip(bus[i]) * PCM16_SCALE);
+                    dest.put((byte) value);
+                    dest.put((byte) (value >> 8));
+                }
+            }
+            case PCM24 -> {
+                for (var i = 0; i < count; i++) {
+                    var value = (int) (clip(bus[i]) * PCM24_SCALE);
+                    dest.put((byte) value);
+                    dest.put((byte) (value >> 8));
+                    dest.put((byte) (value >> 16));
+                }
+            }
+            case FLOAT32 -> {
+                for (var i = 0; i < count; i++) {
+                    var value = Float.floatToRawIntBits((float) clip(bus[i]));
+                    dest.put((byte) value);
+                    dest.put((byte) (value >> 8));
+                    dest.put((byte) (value >> 16));
+                    dest.put((byte) (value >> 24));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads one sample and scales it to the 16 bit range,
+     * e.g. for the waveform display.
+     *
+     * @param src audio data of this format
+     * @param bytePos byte position of the sample
+     * @return sample value in the 16 bit range
+     */
+    public short decode16(byte[] src, int bytePos) {
+        return switch (this) {
+            case PCM16 -> (short) ((src[bytePos] & 0xff) | (src[bytePos + 1] << 8));
+            case PCM24 -> (short) ((src[bytePos + 1] & 0xff) | (src[bytePos + 2] << 8));
+            case FLOAT32 -> {
+                var bits = (src[bytePos] & 0xff) | ((src[bytePos + 1] & 0xff) << 8)
+                        | ((src[bytePos + 2] & 0xff) << 16) | (src[bytePos + 3] << 24);
+                yield (short) (Float.intBitsToFloat(bits) * PCM16_SCALE);
+            }
+        };
+    }
+
+    /**
+     * Limits a mix bus value to the range from -1 to 1.
+     *
+     * @param value mix bus value
+     * @return clipped value
+     */
+    private static double clip(double value) {
+        return Math.max(-1.0, Math.min(1.0, value));
+    }
+}
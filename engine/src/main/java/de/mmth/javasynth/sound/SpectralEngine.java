@@ -0,0 +1,267 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.util.Arrays;
+
+/**
+ * Additive synthesis with the inverse FFT and overlap-add.
+ * .
+ * Each frame places every partial into the spectrum as the
+ * transform of a Hann window shifted to the partial frequency,
+ * truncated to a few bins around it and read from an oversampled
+ * table. One inverse FFT turns the spectrum into a windowed frame,
+ * the frames overlap by one half so the windows add up to one.
+ * The cost per sample depends on the FFT size instead of the
+ * number of partials.
+ * .
+ * The amplitudes and phases of a frame are calculated at the frame
+ * center from the segment position, so a frame never depends on its
+ * predecessors and a segment can be rendered in arbitrary blocks.
+ * Amplitude ramps within a frame are approximated by the window
+ * cross fade. An engine is not thread safe, each rendering thread
+ * needs its own engine.
+ */
+final class SpectralEngine {
+    static final int FRAME_SIZE = 1024;
+    static final int HOP = FRAME_SIZE / 2;
+    private static final int MOTIF_BINS = 12;
+    private static final int OVERSAMPLING = 256;
+    private static final double[] MOTIF = createMotif();
+    private static final double[] TWIDDLE_COS = new double[FRAME_SIZE / 2];
+    private static final double[] TWIDDLE_SIN = new double[FRAME_SIZE / 2];
+    private static final int[] BIT_REVERSE = new int[FRAME_SIZE];
+
+    static {
+        for (var i = 0; i < FRAME_SIZE / 2; i++) {
+            TWIDDLE_COS[i] = Math.cos(2.0 * Math.PI * i / FRAME_SIZE);
+            TWIDDLE_SIN[i] = Math.sin(2.0 * Math.PI * i / FRAME_SIZE);
+        }
+
+        var bits = Integer.numberOfTrailingZeros(FRAME_SIZE);
+        for (var i = 0; i < FRAME_SIZE; i++) {
+            BIT_REVERSE[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    private final double[] re = new double[FRAME_SIZE];
+    private final double[] im = new double[FRAME_SIZE];
+    private final double[][] frames = new double[2][FRAME_SIZE];
+    private final long[] frameKeys = {-1, -1};
+    private double[] segmentBlock = new double[0];
+    private long generation;
+
+    /**
+     * Discards the cached frames, must be called after each
+     * change of the partial settings.
+     */
+    void invalidate() {
+        generation++;
+    }
+
+    /**
+     * Calculates the harmonics sum of a range of a note segment,
+     * without the global envelope.
+     * .
+     * The oscillator position of the segment position r is
+     * r + positionOffset, the note position is r + segmentStart.
+     *
+     * @param deltas phase increment per sample of each partial
+     * @param envelopes envelopes of the partials
+     * @param count number of partials
+     * @param segment id of the segment, frames are cached per segment
+     * @param segmentStart note position of the segment start
+     * @param positionOffset oscillator position of the segment start
+     * @param first first segment position
+     * @param length number of samples
+     * @return block with the harmonics sum, valid up to length
+     */
+    double[] render(double[] deltas, EnvelopeBank envelopes, int count, int segment,
+                    int segmentStart, int positionOffset, int first, int length) {
+        if (segmentBlock.length < length) {
+            segmentBlock = new double[length];
+        }
+        Arrays.fill(segmentBlock, 0, length, 0.0);
+
+        var end = first + length;
+        var lastFrame = (end - 1) / HOP + 1;
+        for (var m = first / HOP; m <= lastFrame; m++) {
+            var frame = frame(deltas, envelopes, count, segment, segmentStart, positionOffset, m);
+            var center = m * HOP;
+            var from = Math.max(first, center - HOP);
+            var to = Math.min(end, center + HOP);
+            for (var r = from; r < to; r++) {
+                segmentBlock[r - first] += frame[r - center + HOP];
+            }
+        }
+
+        return segmentBlock;
+    }
+
+    /**
+     * Returns the windowed frame centered at segment position
+     * m * HOP, from the cache or calculated.
+     *
+     * @return windowed frame
+     */
+    private double[] frame(double[] deltas, EnvelopeBank envelopes, int count, int segment,
+                           int segmentStart, int positionOffset, int m) {
+        var key = ((generation * 4 + segment) << 32) | m;
+        for (var i = 0; i < frames.length; i++) {
+            if (frameKeys[i] == key) {
+                return frames[i];
+            }
+        }
+
+        // replace the frame with the lower number, blocks advance in time
+        var slot = (frameKeys[0] & 0xffffffffL) <= (frameKeys[1] & 0xffffffffL) ? 0 : 1;
+        frameKeys[slot] = key;
+        calcFrame(deltas, envelopes, count, segmentStart, positionOffset, m * HOP, frames[slot]);
+        return frames[slot];
+    }
+
+    /**
+     * Builds the spectrum of one frame and transforms it
+     * into the windowed time signal.
+     *
+     * @param center segment position of the frame center
+     * @param frame destination of the windowed time signal
+     */
+    private void calcFrame(double[] deltas, EnvelopeBank envelopes, int count,
+                           int segmentStart, int positionOffset, int center, double[] frame) {
+        Arrays.fill(re, 0, FRAME_SIZE / 2 + 1, 0.0);
+        Arrays.fill(im, 0, FRAME_SIZE / 2 + 1, 0.0);
+
+        var position = (double) (center + positionOffset);
+        for (var k = 0; k < count; k++) {
+            var amplitude = envelopes.amplitudeAt(k, segmentStart + center);
+            if (amplitude == 0.0) {
+                continue;
+            }
+
+            var phase = deltas[k] * position;
+            var sin = 0.5 * amplitude * Math.sin(phase);
+            var cos = 0.5 * amplitude * Math.cos(phase);
+            var bin = deltas[k] * FRAME_SIZE / (2.0 * Math.PI);
+            addMotif(bin, sin, -cos);
+            addMotif(-bin, sin, cos);
+            addMotif(FRAME_SIZE - bin, sin, cos);
+        }
+
+        inverseTransform(frame);
+    }
+
+    /**
+     * Adds the window transform around a frequency to the spectrum.
+     * The alternating sign moves the window center to the middle of
+     * the frame.
+     *
+     * @param bin frequency in bins
+     * @param real real part of the complex amplitude
+     * @param imag imaginary part of the complex amplitude
+     */
+    private void addMotif(double bin, double real, double imag) {
+        var low = Math.max(0, (int) Math.ceil(bin - MOTIF_BINS));
+        var high = Math.min(FRAME_SIZE / 2, (int) Math.floor(bin + MOTIF_BINS));
+        for (var k = low; k <= high; k++) {
+            var t = (k - bin + MOTIF_BINS) * OVERSAMPLING;
+            var index = (int) t;
+            var fraction = t - index;
+            var weight = MOTIF[index] + fraction * (MOTIF[index + 1] - MOTIF[index]);
+            if ((k & 1) != 0) {
+                weight = -weight;
+            }
+            re[k] += real * weight;
+            im[k] += imag * weight;
+        }
+    }
+
+    /**
+     * Completes the conjugate symmetric spectrum and calculates
+     * the real inverse FFT.
+     *
+     * @param frame destination of the time signal
+     */
+    private void inverseTransform(double[] frame) {
+        var half = FRAME_SIZE / 2;
+        im[0] = 0.0;
+        im[half] = 0.0;
+        for (var k = 1; k < half; k++) {
+            re[FRAME_SIZE - k] = re[k];
+            im[FRAME_SIZE - k] = -im[k];
+        }
+
+        for (var i = 0; i < FRAME_SIZE; i++) {
+            var j = BIT_REVERSE[i];
+            if (i < j) {
+                var t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (var size = 2; size <= FRAME_SIZE; size <<= 1) {
+            var halfSize = size >> 1;
+            var step = FRAME_SIZE / size;
+            for (var start = 0; start < FRAME_SIZE; start += size) {
+                for (var j = 0; j < halfSize; j++) {
+                    var wr = TWIDDLE_COS[j * step];
+                    var wi = TWIDDLE_SIN[j * step];
+                    var a = start + j;
+                    var b = a + halfSize;
+                    var tr = re[b] * wr - im[b] * wi;
+                    var ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+
+        var scale = 1.0 / FRAME_SIZE;
+        for (var j = 0; j < FRAME_SIZE; j++) {
+            frame[j] = re[j] * scale;
+        }
+    }
+
+    /**
+     * Tabulates the transform of the centered periodic Hann window
+     * from -MOTIF_BINS to +MOTIF_BINS bins, one extra entry for the
+     * interpolation.
+     *
+     * @return oversampled window transform
+     */
+    private static double[] createMotif() {
+        var size = 2 * MOTIF_BINS * OVERSAMPLING + 2;
+        var motif = new double[size];
+        for (var i = 0; i < size; i++) {
+            var b = (double) i / OVERSAMPLING - MOTIF_BINS;
+            motif[i] = 0.5 * dirichlet(b) + 0.25 * dirichlet(b - 1.0) + 0.25 * dirichlet(b + 1.0);
+        }
+
+        return motif;
+    }
+
+    /**
+     * Real part of the transform of a rectangular window
+     * over the frame positions -N/2 to N/2 - 1.
+     *
+     * @param b frequency offset in bins
+     * @return transform value
+     */
+    private static double dirichlet(double b) {
+        var denominator = Math.sin(Math.PI * b / FRAME_SIZE);
+        if (Math.abs(denominator) < 1e-12) {
+            return FRAME_SIZE;
+        }
+
+        return Math.cos(Math.PI * b / FRAME_SIZE) * Math.sin(Math.PI * b) / denominator;
+    }
+}
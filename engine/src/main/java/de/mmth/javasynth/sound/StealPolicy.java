@@ -0,0 +1,23 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Selects the voice which is reused when a note
+ * starts and all voices are playing.
+ */
+public enum StealPolicy {
+    /**
+     * Steals the voice with the earliest note on.
+     */
+    OLDEST,
+
+    /**
+     * Steals the voice with the lowest envelope level,
+     * the oldest one when the levels are equal.
+     */
+    QUIETEST
+}
@@ -0,0 +1,333 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the patch settings and all renderers.
+ * .
+ * Complete notes are rendered on a background thread, so the
+ * user interface thread never waits for a render. Each published
+ * change cancels a render of older settings and schedules a
+ * pre-render of the new ones after a short quiet period, a burst
+ * of slider events results in a single render. Play then finds
+ * the note in the render cache or joins the running render.
+ * .
+ * While a MIDI input is connected the pre-render also renders
+ * the note heads of all keys, so a note on of the voice engine
+ * does not have to render its first blocks.
+ */
+public class Synthesis {
+    private static final int VOICE_COUNT = 16;
+    private static final long RENDER_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final long PRERENDER_DELAY_MILLIS = 150;
+
+    private Harmonic[] harmonics;
+    private Globals globals;
+    private ParameterStore parameters;
+    private AudioBuffer audioBuffer;
+    private VoiceManager voices;
+    private final Telemetry telemetry = new Telemetry();
+    private final CpuGovernor governor = new CpuGovernor(CpuGovernor.DEFAULT_BUDGET);
+    private final RenderCache renderCache = new RenderCache(RENDER_CACHE_BYTES);
+    private final KeyCache keyCache = new KeyCache();
+    private final ScheduledExecutorService renderExecutor = Executors.newSingleThreadScheduledExecutor(task -> {
+        var thread = new Thread(task, "Render");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile OscillatorQuality quality = OscillatorQuality.RECURSIVE;
+    private CompletableFuture<AudioBuffer> renderJob;
+    private long renderVersion;
+    private ScheduledFuture<?> prerender;
+    private boolean keyPrerender;
+
+    public void init(int numberOfHarmonics) {
+        harmonics = new Harmonic[numberOfHarmonics];
+        for (var i = 0; i < harmonics.length; i++) {
+            harmonics[i] = new Harmonic(i+1);
+        }
+
+        globals = new Globals();
+        parameters = new ParameterStore(globals, harmonics);
+        audioBuffer = new AudioBuffer(parameters);
+        audioBuffer.setParallel(true);
+        audioBuffer.setIncremental(true);
+        audioBuffer.setVectorized(true);
+        audioBuffer.setTelemetry(telemetry);
+        voices = createVoices();
+    }
+
+    /**
+     * Publishes the actual settings to the render threads.
+     * Must be called from the user interface thread after
+     * each change of the globals or harmonics.
+     * .
+     * A running render of older settings is cancelled and
+     * the pre-render of the new settings is (re)scheduled.
+     */
+    public synchronized void publish() {
+        parameters.publish();
+        if (renderJob != null) {
+            renderJob.cancel(false);
+            renderJob = null;
+        }
+
+        if (prerender != null) {
+            prerender.cancel(false);
+        }
+        prerender = renderExecutor.schedule(this::prerender, PRERENDER_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Switches the pre-render of the note heads of all keys,
+     * used while a MIDI input is connected.
+     *
+     * @param enabled true to pre-render the note heads
+     */
+    public synchronized void setKeyPrerender(boolean enabled) {
+        keyPrerender = enabled;
+        if (enabled) {
+            renderExecutor.execute(this::renderKeys);
+        }
+    }
+
+    /**
+     * Pre-renders the note and the note heads of the actual settings.
+     */
+    private void prerender() {
+        render();
+        if (keyPrerender) {
+            renderExecutor.execute(this::renderKeys);
+        }
+    }
+
+    /**
+     * Renders the note heads of the actual settings on the
+     * background thread, cancelled by newer settings.
+     */
+    private void renderKeys() {
+        var snapshot = parameters.get();
+        var keyQuality = quality;
+        if (keyCache.isCurrent(snapshot.version(), keyQuality)) {
+            return;
+        }
+
+        try {
+            keyCache.render(snapshot, keyQuality,
+                    () -> (parameters.get().version() != snapshot.version()) || (quality != keyQuality));
+        } catch (CancellationException e) {
+            System.out.println("Key pre-render cancelled");
+        }
+    }
+
+    /**
+     * Returns true when the note heads of the actual
+     * settings are pre-rendered.
+     *
+     * @return true when a note on finds its note head
+     */
+    boolean isKeyCacheCurrent() {
+        return keyCache.isCurrent(parameters.get().version(), quality);
+    }
+
+    public Harmonic[] getHarmonics() {
+        return harmonics;
+    }
+
+    public Globals getGlobals() {
+        return globals;
+    }
+
+    /**
+     * Renders the actual settings on the background thread.
+     * Returns the running render when it already renders the
+     * actual settings. The result is an own audio buffer with
+     * the rendered data, it is not changed by later renders.
+     * .
+     * The future is cancelled when newer settings are published
+     * before the render has finished.
+     *
+     * @return rendered note
+     */
+    public synchronized CompletableFuture<AudioBuffer> render() {
+        var snapshot = parameters.get();
+        if ((renderJob != null) && (renderVersion == snapshot.version()) && !renderJob.isCompletedExceptionally()) {
+            return renderJob;
+        }
+
+        var job = new CompletableFuture<AudioBuffer>();
+        renderJob = job;
+        renderVersion = snapshot.version();
+        renderExecutor.execute(() -> renderNote(snapshot, job));
+        return job;
+    }
+
+    /**
+     * Renders a note on the background thread. Settings which
+     * were rendered before are taken from the render cache.
+     *
+     * @param snapshot patch settings
+     * @param job receives the rendered note
+     */
+    private void renderNote(PatchSnapshot snapshot, CompletableFuture<AudioBuffer> job) {
+        if (job.isDone()) {
+            return;
+        }
+
+        try {
+            var key = PatchKey.of(snapshot, quality, audioBuffer.getRenderMethod(), audioBuffer.getCullThreshold());
+            var data = renderCache.get(key);
+            if (data == null) {
+                audioBuffer.setQuality(quality);
+                audioBuffer.updateBuffer(snapshot, job::isCancelled);
+                data = audioBuffer.shareBuffer();
+                renderCache.put(key, data);
+            }
+
+            var note = new AudioBuffer(() -> snapshot);
+            note.setBuffer(data);
+            note.getPeaks();
+            job.complete(note);
+        } catch (CancellationException e) {
+            job.cancel(false);
+        } catch (RuntimeException e) {
+            job.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Returns the performance metrics of all renderers.
+     *
+     * @return telemetry
+     */
+    public Telemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Returns the cache of rendered notes, e.g. to change
+     * the byte budget or read the statistics.
+     *
+     * @return render cache
+     */
+    public RenderCache getRenderCache() {
+        return renderCache;
+    }
+
+    /**
+     * Selects the oscillator quality of all renderers.
+     *
+     * @param quality oscillator quality
+     */
+    public synchronized void setOscillatorQuality(OscillatorQuality quality) {
+        this.quality = quality;
+        voices.setQuality(quality);
+        if (keyPrerender) {
+            renderExecutor.execute(this::renderKeys);
+        }
+    }
+
+    /**
+     * Prepares a note for the streaming output. Each stream
+     * uses its own renderer, so a running stream is not
+     * affected by the next one.
+     *
+     * @return block source of the actual sound
+     */
+    public BlockSource stream() {
+        var streamBuffer = new AudioBuffer(parameters);
+        streamBuffer.setQuality(quality);
+        streamBuffer.setVectorized(true);
+        streamBuffer.setTelemetry(telemetry);
+        streamBuffer.prepare();
+        telemetry.setActivePartials(streamBuffer.getActiveHarmonicCount());
+        telemetry.setActiveVoices(1);
+        var audioStream = new AudioStream(streamBuffer);
+        audioStream.setGovernor(governor);
+        return audioStream;
+    }
+
+    /**
+     * Returns the polyphonic voice engine, a block source
+     * for the streaming output.
+     *
+     * @return voice manager
+     */
+    public synchronized VoiceManager getVoices() {
+        return voices;
+    }
+
+    /**
+     * Starts a note with the given pitch on the voice engine.
+     *
+     * @param pitch pitch frequency in hertz
+     */
+    public void noteOn(double pitch) {
+        updateVoices(parameters.get()).noteOn(pitch);
+    }
+
+    /**
+     * Starts a held note of a MIDI key on the voice engine,
+     * with the pre-rendered note head if available.
+     *
+     * @param key MIDI key number
+     * @param noteOnTime System.nanoTime() of the note on event
+     * @return voice engine playing the note
+     */
+    public VoiceManager noteOn(int key, long noteOnTime) {
+        var patch = parameters.get();
+        var voiceManager = updateVoices(patch);
+        var head = keyCache.get(key, patch.version(), quality);
+        voiceManager.noteOn(key, MidiInput.keyToPitch(key), head, noteOnTime);
+        return voiceManager;
+    }
+
+    /**
+     * Releases the held note of a MIDI key.
+     *
+     * @param key MIDI key number
+     */
+    public void noteOff(int key) {
+        getVoices().noteOff(key);
+    }
+
+    /**
+     * Replaces the voice engine when the output format
+     * of the patch has changed.
+     *
+     * @param patch actual patch settings
+     * @return voice engine for the patch
+     */
+    private synchronized VoiceManager updateVoices(PatchSnapshot patch) {
+        var output = patch.sampleFormat().createFormat(patch.sampleRate());
+        if (!voices.getFormat().matches(output)) {
+            voices.allNotesOff();
+            voices = createVoices();
+        }
+
+        return voices;
+    }
+
+    /**
+     * Creates the voice engine for the actual output format.
+     *
+     * @return voice manager
+     */
+    private VoiceManager createVoices() {
+        var voiceManager = new VoiceManager(parameters, VOICE_COUNT, StealPolicy.OLDEST);
+        voiceManager.setQuality(quality);
+        voiceManager.setTelemetry(telemetry);
+        voiceManager.setGovernor(governor);
+        return voiceManager;
+    }
+}
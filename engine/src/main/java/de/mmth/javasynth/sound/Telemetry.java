@@ -0,0 +1,307 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Performance metrics of the synthesis and the audio output.
+ * .
+ * The render and player threads record the timing of each
+ * render and each streamed block, the buffer underruns and
+ * the latency from a play request to the first audible frame
+ * and from a MIDI note on to the first mixed block of the note.
+ * The user interface reads the values, e.g. to show how much
+ * headroom a patch leaves.
+ * .
+ * The renderers count the harmonics which are not calculated:
+ * above the Nyquist frequency, below the audibility threshold,
+ * finished decays (per rendered block) and the partials dropped
+ * by the CPU governor.
+ * .
+ * The real-time factor is the rendered audio time divided by
+ * the time needed to render it, values below 1 cause underruns.
+ * .
+ * The player thread measures the bytes allocated while rendering
+ * each streamed block. The render loop is free of allocations in
+ * the steady state, allocating blocks risk a GC pause and show
+ * a regression. Recording allocates nothing itself.
+ */
+public class Telemetry {
+    // looked up once, the lookup itself allocates
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final LatencyHistogram renderTime = new LatencyHistogram();
+    private final LatencyHistogram blockTime = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram noteLatency = new LatencyHistogram();
+    private final AtomicLong underruns = new AtomicLong();
+    private final AtomicLong nyquistCulls = new AtomicLong();
+    private final AtomicLong silentCulls = new AtomicLong();
+    private final AtomicLong decayCulls = new AtomicLong();
+    private final AtomicLong governorDrops = new AtomicLong();
+    private final AtomicLong allocatingBlocks = new AtomicLong();
+    private volatile int lastDropHarmonic;
+    private volatile double lastDropLevel;
+    private volatile double renderRealTimeFactor;
+    private volatile double blockRealTimeFactor;
+    private volatile long allocatedBytes = -1;
+    private volatile long blockAllocatedBytes = -1;
+    private volatile int activePartials;
+    private volatile int activeVoices;
+
+    /**
+     * Records a complete render of a note.
+     *
+     * @param nanos render time in nanoseconds
+     * @param samples number of rendered samples
+     * @param sampleRate sample rate of the note
+     * @param allocated bytes allocated by the rendering thread, -1 if unknown
+     */
+    public void recordRender(long nanos, int samples, int sampleRate, long allocated) {
+        renderTime.record(nanos);
+        renderRealTimeFactor = realTimeFactor(nanos, samples, sampleRate);
+        allocatedBytes = allocated;
+    }
+
+    /**
+     * Records the rendering of one streamed block.
+     *
+     * @param nanos render time in nanoseconds
+     * @param frames number of rendered frames
+     * @param sampleRate sample rate of the stream
+     * @param allocated bytes allocated by the player thread, -1 if unknown
+     */
+    public void recordBlock(long nanos, int frames, int sampleRate, long allocated) {
+        blockTime.record(nanos);
+        blockRealTimeFactor = realTimeFactor(nanos, frames, sampleRate);
+        blockAllocatedBytes = allocated;
+        if (allocated > 0) {
+            allocatingBlocks.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a buffer underrun of the output line.
+     */
+    public void recordUnderrun() {
+        underruns.incrementAndGet();
+    }
+
+    /**
+     * Counts the harmonics culled when a note is prepared.
+     *
+     * @param aboveNyquist harmonics above the Nyquist frequency
+     * @param inaudible harmonics below the audibility threshold
+     */
+    public void recordCulled(int aboveNyquist, int inaudible) {
+        nyquistCulls.addAndGet(aboveNyquist);
+        silentCulls.addAndGet(inaudible);
+    }
+
+    /**
+     * Counts the harmonics whose decay has finished, they
+     * are skipped in the following blocks of the note.
+     *
+     * @param count skipped harmonics
+     */
+    public void recordDecayCulled(int count) {
+        decayCulls.addAndGet(count);
+    }
+
+    /**
+     * Records a harmonic dropped by the CPU governor. Called
+     * in the render loop, the description is built when read.
+     *
+     * @param overtoneNumber overtone position of the harmonic
+     * @param level loudness of the harmonic in dB
+     */
+    public void recordGovernorDrop(int overtoneNumber, double level) {
+        lastDropLevel = level;
+        lastDropHarmonic = overtoneNumber;
+        governorDrops.incrementAndGet();
+    }
+
+    /**
+     * Records the time from a play request to the first audible frame.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * Records the time from a MIDI note on to the mix of the
+     * first block of the note.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void recordNoteLatency(long nanos) {
+        noteLatency.record(nanos);
+    }
+
+    /**
+     * Sets the number of harmonics rendered for the actual sound.
+     *
+     * @param count active partials
+     */
+    public void setActivePartials(int count) {
+        activePartials = count;
+    }
+
+    /**
+     * Sets the number of playing voices.
+     *
+     * @param count active voices
+     */
+    public void setActiveVoices(int count) {
+        activeVoices = count;
+    }
+
+    public LatencyHistogram getRenderTime() {
+        return renderTime;
+    }
+
+    public LatencyHistogram getBlockTime() {
+        return blockTime;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getNoteLatency() {
+        return noteLatency;
+    }
+
+    public long getUnderruns() {
+        return underruns.get();
+    }
+
+    public long getNyquistCulls() {
+        return nyquistCulls.get();
+    }
+
+    public long getSilentCulls() {
+        return silentCulls.get();
+    }
+
+    public long getDecayCulls() {
+        return decayCulls.get();
+    }
+
+    public long getGovernorDrops() {
+        return governorDrops.get();
+    }
+
+    /**
+     * Describes the last harmonic dropped by the CPU governor.
+     *
+     * @return description, empty before the first drop
+     */
+    public String getLastDrop() {
+        var harmonic = lastDropHarmonic;
+        return harmonic == 0 ? "" : String.format("harmonic %d at %.1f dB", harmonic, lastDropLevel);
+    }
+
+    public double getRenderRealTimeFactor() {
+        return renderRealTimeFactor;
+    }
+
+    public double getBlockRealTimeFactor() {
+        return blockRealTimeFactor;
+    }
+
+    /**
+     * Returns the bytes allocated by the last render.
+     *
+     * @return allocated bytes, -1 if the JVM does not measure it
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Returns the bytes allocated while rendering the last streamed block.
+     *
+     * @return allocated bytes, -1 if the JVM does not measure it
+     */
+    public long getBlockAllocatedBytes() {
+        return blockAllocatedBytes;
+    }
+
+    /**
+     * Returns the number of streamed blocks which allocated memory.
+     *
+     * @return allocating blocks
+     */
+    public long getAllocatingBlocks() {
+        return allocatingBlocks.get();
+    }
+
+    public int getActivePartials() {
+        return activePartials;
+    }
+
+    public int getActiveVoices() {
+        return activeVoices;
+    }
+
+    /**
+     * Clears all histograms and counters.
+     */
+    public void reset() {
+        renderTime.reset();
+        blockTime.reset();
+        latency.reset();
+        noteLatency.reset();
+        underruns.set(0);
+        nyquistCulls.set(0);
+        silentCulls.set(0);
+        decayCulls.set(0);
+        governorDrops.set(0);
+        allocatingBlocks.set(0);
+        lastDropHarmonic = 0;
+    }
+
+    /**
+     * Returns the bytes allocated by the calling thread so far.
+     * Allocations of worker threads are not included.
+     *
+     * @return allocated bytes, -1 if the JVM does not measure it
+     */
+    public static long threadAllocatedBytes() {
+        if ((THREADS instanceof com.sun.management.ThreadMXBean bean) && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean.getCurrentThreadAllocatedBytes();
+        }
+
+        return -1;
+    }
+
+    /**
+     * Calculates the rendered audio time divided by the render time.
+     *
+     * @param nanos render time in nanoseconds
+     * @param frames number of rendered frames
+     * @param sampleRate sample rate
+     * @return real-time factor
+     */
+    private static double realTimeFactor(long nanos, int frames, int sampleRate) {
+        return (frames * 1_000_000_000.0 / sampleRate) / Math.max(nanos, 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("render %s rtf=%.1f%nblock %s rtf=%.1f%nlatency %s%nnote latency %s%nunderruns=%d allocating blocks=%d partials=%d voices=%d%n"
+                        + "culled nyquist=%d silent=%d decay=%d governor=%d",
+                renderTime, renderRealTimeFactor, blockTime, blockRealTimeFactor, latency, noteLatency,
+                getUnderruns(), getAllocatingBlocks(), activePartials, activeVoices,
+                getNyquistCulls(), getSilentCulls(), getDecayCulls(), getGovernorDrops());
+    }
+}
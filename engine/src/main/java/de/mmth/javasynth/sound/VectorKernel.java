@@ -0,0 +1,124 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Render kernels based on the Vector API, vectorized
+ * across the harmonics.
+ * .
+ * The jdk.incubator.vector module must be added at runtime
+ * (--add-modules jdk.incubator.vector). Even the verification of
+ * this class needs the module, so callers have to check
+ * AudioBuffer.isVectorApiAvailable before this class is touched.
+ */
+final class VectorKernel {
+
+    private VectorKernel() {
+    }
+
+    /**
+     * Calculates the sum of the products of both arrays.
+     *
+     * @param values oscillator values
+     * @param loudness loudness of each harmonic
+     * @param count number of harmonics
+     * @return sum of products
+     */
+    static double dot(double[] values, double[] loudness, int count) {
+        var species = Species.DOUBLE;
+        var sum = DoubleVector.zero(species);
+        var upper = species.loopBound(count);
+        var k = 0;
+        for (; k < upper; k += species.length()) {
+            var v = DoubleVector.fromArray(species, values, k);
+            var l = DoubleVector.fromArray(species, loudness, k);
+            sum = v.fma(l, sum);
+        }
+
+        var result = sum.reduceLanes(VectorOperators.ADD);
+        for (; k < count; k++) {
+            result += values[k] * loudness[k];
+        }
+
+        return result;
+    }
+
+    /**
+     * Calculates the sum of the products of the oscillator values
+     * and the amplitudes and advances the amplitudes by one sample.
+     *
+     * @param values oscillator values
+     * @param amplitudes amplitude of each harmonic, updated in place
+     * @param multipliers amplitude multiplier of each harmonic
+     * @param increments amplitude increment of each harmonic
+     * @param count number of harmonics
+     * @return sum of products
+     */
+    static double envelopeSum(double[] values, double[] amplitudes, double[] multipliers,
+                              double[] increments, int count) {
+        var species = Species.DOUBLE;
+        var sum = DoubleVector.zero(species);
+        var upper = species.loopBound(count);
+        var k = 0;
+        for (; k < upper; k += species.length()) {
+            var a = DoubleVector.fromArray(species, amplitudes, k);
+            sum = DoubleVector.fromArray(species, values, k).fma(a, sum);
+            var m = DoubleVector.fromArray(species, multipliers, k);
+            a.fma(m, DoubleVector.fromArray(species, increments, k)).intoArray(amplitudes, k);
+        }
+
+        var result = sum.reduceLanes(VectorOperators.ADD);
+        for (; k < count; k++) {
+            var amplitude = amplitudes[k];
+            result += values[k] * amplitude;
+            amplitudes[k] = amplitude * multipliers[k] + increments[k];
+        }
+
+        return result;
+    }
+
+    /**
+     * Advances the recursive oscillators by one sample.
+     *
+     * @param sin sine values, updated in place
+     * @param cos cosine values, updated in place
+     * @param stepSin sine of the phase increment
+     * @param stepCos cosine of the phase increment
+     * @param count number of oscillators
+     */
+    static void rotate(double[] sin, double[] cos, double[] stepSin, double[] stepCos, int count) {
+        var species = Species.DOUBLE;
+        var upper = species.loopBound(count);
+        var k = 0;
+        for (; k < upper; k += species.length()) {
+            var s = DoubleVector.fromArray(species, sin, k);
+            var c = DoubleVector.fromArray(species, cos, k);
+            var ss = DoubleVector.fromArray(species, stepSin, k);
+            var cs = DoubleVector.fromArray(species, stepCos, k);
+            s.mul(cs).add(c.mul(ss)).intoArray(sin, k);
+            c.mul(cs).sub(s.mul(ss)).intoArray(cos, k);
+        }
+
+        for (; k < count; k++) {
+            var s = sin[k];
+            var c = cos[k];
+            sin[k] = s * stepCos[k] + c * stepSin[k];
+            cos[k] = c * stepCos[k] - s * stepSin[k];
+        }
+    }
+
+    /**
+     * Holds the preferred vector species, initialized on the
+     * first use of a kernel only.
+     */
+    private static final class Species {
+        static final VectorSpecies<Double> DOUBLE = DoubleVector.SPECIES_PREFERRED;
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import java.util.function.Supplier;
+
+/**
+ * One voice of the polyphonic voice pool.
+ * All voices share the patch (globals and harmonics),
+ * but each voice has its own pitch, oscillator phases
+ * and envelope position.
+ */
+public class Voice {
+    private final AudioBuffer renderer;
+    private boolean active;
+    private double pitch;
+    private int position;
+    private long startOrder;
+    private int key = -1;
+    private double[] head;
+    private long noteOnTime;
+
+    /**
+     * Constructor gets the shared patch injected.
+     *
+     * @param patchSource supplies the latest patch snapshot
+     */
+    public Voice(Supplier<PatchSnapshot> patchSource) {
+        renderer = new AudioBuffer(patchSource);
+        renderer.setVectorized(true);
+    }
+
+    /**
+     * Starts a new note on this voice, a running note is cut off.
+     *
+     * @param pitch pitch frequency in hertz
+     * @param startOrder sequence number of the note on
+     */
+    public void start(double pitch, long startOrder) {
+        this.pitch = pitch;
+        this.startOrder = startOrder;
+        key = -1;
+        head = null;
+        noteOnTime = 0;
+        renderer.prepare(pitch);
+        position = 0;
+        active = true;
+    }
+
+    /**
+     * Starts a held note of a key on this voice, a running
+     * note is cut off. The note sustains until release is called.
+     * The head is played instead of rendering the first samples
+     * when it was rendered from the same patch version.
+     *
+     * @param key MIDI key number
+     * @param pitch pitch frequency in hertz
+     * @param startOrder sequence number of the note on
+     * @param noteHead pre-rendered start of the note, may be null
+     * @param noteOnTime System.nanoTime() of the note on event
+     */
+    void startHeld(int key, double pitch, long startOrder, KeyCache.NoteHead noteHead, long noteOnTime) {
+        this.pitch = pitch;
+        this.startOrder = startOrder;
+        this.key = key;
+        this.noteOnTime = noteOnTime;
+        renderer.prepareHeld(pitch);
+        head = ((noteHead != null) && (noteHead.version() == renderer.getPatchVersion())) ? noteHead.samples() : null;
+        position = 0;
+        active = true;
+    }
+
+    /**
+     * Releases a held note, the decay starts at the actual position.
+     * The rest of the head is dropped, it contains the held note.
+     */
+    public void release() {
+        if (active) {
+            renderer.release(position);
+            head = null;
+            key = -1;
+        }
+    }
+
+    /**
+     * Returns the key of the held note.
+     *
+     * @return MIDI key number, -1 when no key is held
+     */
+    public int getKey() {
+        return active ? key : -1;
+    }
+
+    /**
+     * Returns the time of the note on event once, after the
+     * first samples of the note were mixed.
+     *
+     * @return System.nanoTime() of the note on, 0 if not available
+     */
+    long takeNoteOnTime() {
+        var time = noteOnTime;
+        noteOnTime = 0;
+        return time;
+    }
+
+    /**
+     * Silences this voice immediately.
+     */
+    public void stop() {
+        active = false;
+    }
+
+    /**
+     * Adds the next samples of the note to the mix bus.
+     * The voice becomes inactive at the end of the note.
+     * The note head is copied as long as the position is
+     * within the head.
+     *
+     * @param bus destination mix bus
+     * @param count number of samples
+     */
+    public void mix(double[] bus, int count) {
+        if (!active) {
+            return;
+        }
+
+        var mixed = 0;
+        if ((head != null) && (position < head.length)) {
+            mixed = Math.min(count, head.length - position);
+            for (var j = 0; j < mixed; j++) {
+                bus[j] += head[position + j];
+            }
+            position += mixed;
+        }
+
+        if (mixed < count) {
+            renderer.applyLive();
+            position += renderer.mix(position, count - mixed, bus, mixed);
+        }
+        if (position >= renderer.getSampleCount()) {
+            active = false;
+        }
+    }
+
+    /**
+     * Returns true while the note is playing.
+     *
+     * @return active state
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Sets the metrics which receive the culled harmonics.
+     *
+     * @param telemetry destination of the metrics
+     */
+    public void setTelemetry(Telemetry telemetry) {
+        renderer.setTelemetry(telemetry);
+    }
+
+    /**
+     * Returns the level of the quietest harmonic of this voice.
+     *
+     * @return level in dB, positive infinity when no harmonic can be dropped
+     */
+    public double getQuietestLevel() {
+        return active ? renderer.getQuietestLevel() : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Drops the quietest harmonic of the actual note.
+     */
+    public void shedQuietest() {
+        renderer.shedQuietest();
+    }
+
+    /**
+     * Returns the number of harmonics rendered by this voice.
+     *
+     * @return active partials, 0 when inactive
+     */
+    public int getPartialCount() {
+        return active ? renderer.getActiveHarmonicCount() : 0;
+    }
+
+    /**
+     * Returns the pitch of the actual note.
+     *
+     * @return pitch frequency in hertz
+     */
+    public double getPitch() {
+        return pitch;
+    }
+
+    /**
+     * Returns the sequence number of the note on,
+     * lower numbers are older notes.
+     *
+     * @return start order
+     */
+    public long getStartOrder() {
+        return startOrder;
+    }
+
+    /**
+     * Returns the actual envelope level of the note.
+     *
+     * @return level, 0 when inactive
+     */
+    public double getLevel() {
+        return active ? renderer.levelAt(position) : 0.0;
+    }
+
+    /**
+     * Selects the oscillator quality of this voice.
+     *
+     * @param quality oscillator quality
+     */
+    public void setQuality(OscillatorQuality quality) {
+        renderer.setQuality(quality);
+    }
+}
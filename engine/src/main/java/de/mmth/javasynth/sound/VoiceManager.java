@@ -0,0 +1,268 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Polyphonic voice engine.
+ * .
+ * Holds a fixed pool of preallocated voices which share
+ * the patch. When all voices are playing a new note steals
+ * a voice according to the steal policy, so the number of
+ * rendered voices never exceeds the pool size.
+ * .
+ * The output format is taken from the patch when the voice
+ * manager is created and stays fixed, later changes of the
+ * sample rate or sample format need a new voice manager.
+ * .
+ * Notes are started from the user interface or MIDI thread
+ * and rendered in the player thread, both paths are synchronized
+ * on the voice manager. Notes of MIDI keys are held until the
+ * key is released, the time from the note on to the mix of its
+ * first block is recorded as note latency.
+ */
+public class VoiceManager implements BlockSource {
+    public static final int MAX_VOICES = 64;
+
+    private final Voice[] voices;
+    private final StealPolicy stealPolicy;
+    private final AudioFormat format;
+    private final SampleFormat sampleFormat;
+    private double[] bus = new double[0];
+    private long noteCounter;
+    private Telemetry telemetry = new Telemetry();
+    private CpuGovernor governor;
+
+    /**
+     * Constructor creates the voice pool.
+     *
+     * @param patchSource supplies the latest patch snapshot
+     * @param voiceCount pool size in the range from 1 to MAX_VOICES
+     * @param stealPolicy voice stealing policy
+     */
+    public VoiceManager(Supplier<PatchSnapshot> patchSource, int voiceCount, StealPolicy stealPolicy) {
+        if ((voiceCount < 1) || (voiceCount > MAX_VOICES)) {
+            throw new IllegalArgumentException("Voice count out of range: " + voiceCount);
+        }
+
+        this.stealPolicy = stealPolicy;
+        var patch = patchSource.get();
+        var sampleRate = patch.sampleRate();
+        sampleFormat = patch.sampleFormat();
+        format = sampleFormat.createFormat(sampleRate);
+
+        Supplier<PatchSnapshot> fixedOutput = () -> patchSource.get().withOutput(sampleRate, sampleFormat);
+        voices = new Voice[voiceCount];
+        for (var i = 0; i < voices.length; i++) {
+            voices[i] = new Voice(fixedOutput);
+        }
+    }
+
+    /**
+     * Starts a note on a free voice or steals one.
+     *
+     * @param pitch pitch frequency in hertz
+     * @return voice playing the note
+     */
+    public synchronized Voice noteOn(double pitch) {
+        var voice = findVoice();
+        voice.start(pitch, noteCounter++);
+        return voice;
+    }
+
+    /**
+     * Starts a held note of a key on a free voice or steals one.
+     * A key which is still held is released first.
+     *
+     * @param key MIDI key number
+     * @param pitch pitch frequency in hertz
+     * @param head pre-rendered start of the note, may be null
+     * @param noteOnTime System.nanoTime() of the note on event
+     * @return voice playing the note
+     */
+    synchronized Voice noteOn(int key, double pitch, KeyCache.NoteHead head, long noteOnTime) {
+        noteOff(key);
+        var voice = findVoice();
+        voice.startHeld(key, pitch, noteCounter++, head, noteOnTime);
+        return voice;
+    }
+
+    /**
+     * Releases the held notes of a key.
+     *
+     * @param key MIDI key number
+     */
+    public synchronized void noteOff(int key) {
+        for (var voice: voices) {
+            if (voice.getKey() == key) {
+                voice.release();
+            }
+        }
+    }
+
+    /**
+     * Silences all voices.
+     */
+    public synchronized void allNotesOff() {
+        for (var voice: voices) {
+            voice.stop();
+        }
+    }
+
+    /**
+     * Returns the number of playing voices.
+     *
+     * @return active voice count
+     */
+    public synchronized int getActiveCount() {
+        var count = 0;
+        for (var voice: voices) {
+            if (voice.isActive()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Sets the metrics which receive the active voice
+     * and partial counts.
+     *
+     * @param telemetry destination of the metrics
+     */
+    public synchronized void setTelemetry(Telemetry telemetry) {
+        this.telemetry = telemetry;
+        for (var voice: voices) {
+            voice.setTelemetry(telemetry);
+        }
+    }
+
+    /**
+     * Sets the governor which drops the quietest harmonic of
+     * all voices when a block takes too long.
+     *
+     * @param governor CPU governor, null to render all harmonics
+     */
+    public synchronized void setGovernor(CpuGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Selects the oscillator quality of all voices.
+     *
+     * @param quality oscillator quality
+     */
+    public synchronized void setQuality(OscillatorQuality quality) {
+        for (var voice: voices) {
+            voice.setQuality(quality);
+        }
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Mixes all playing voices into the next block.
+     * The voice engine never ends, silence is returned
+     * when no voice is playing.
+     *
+     * @param block destination buffer
+     * @return number of bytes written, always the block length
+     */
+    @Override
+    public synchronized int read(byte[] block) {
+        var start = System.nanoTime();
+        var count = block.length / format.getFrameSize();
+        if (bus.length < count) {
+            bus = new double[count];
+        }
+
+        Arrays.fill(bus, 0, count, 0.0);
+        var activeVoices = 0;
+        var activePartials = 0;
+        for (var voice: voices) {
+            voice.mix(bus, count);
+            var noteOnTime = voice.takeNoteOnTime();
+            if (noteOnTime != 0) {
+                telemetry.recordNoteLatency(System.nanoTime() - noteOnTime);
+            }
+            if (voice.isActive()) {
+                activeVoices++;
+                activePartials += voice.getPartialCount();
+            }
+        }
+        telemetry.setActiveVoices(activeVoices);
+        telemetry.setActivePartials(activePartials);
+
+        sampleFormat.encode(bus, count, block, 0);
+        if ((governor != null) && governor.isBehind(System.nanoTime() - start, count, (int) format.getSampleRate())) {
+            shedQuietest();
+        }
+
+        return count * format.getFrameSize();
+    }
+
+    /**
+     * Drops the quietest harmonic of all playing voices.
+     */
+    private void shedQuietest() {
+        Voice candidate = null;
+        for (var voice: voices) {
+            if ((candidate == null) || (voice.getQuietestLevel() < candidate.getQuietestLevel())) {
+                candidate = voice;
+            }
+        }
+
+        if ((candidate != null) && (candidate.getQuietestLevel() < Double.POSITIVE_INFINITY)) {
+            candidate.shedQuietest();
+        }
+    }
+
+    /**
+     * Returns a free voice or the voice to steal.
+     *
+     * @return voice for the next note
+     */
+    private Voice findVoice() {
+        Voice candidate = null;
+        for (var voice: voices) {
+            if (!voice.isActive()) {
+                return voice;
+            }
+
+            if ((candidate == null) || isBetterVictim(voice, candidate)) {
+                candidate = voice;
+            }
+        }
+
+        return candidate;
+    }
+
+    /**
+     * Compares two playing voices according to the steal policy.
+     *
+     * @param voice voice to check
+     * @param candidate actual steal candidate
+     * @return true when the voice should be stolen instead of the candidate
+     */
+    private boolean isBetterVictim(Voice voice, Voice candidate) {
+        if (stealPolicy == StealPolicy.QUIETEST) {
+            var level = voice.getLevel();
+            var candidateLevel = candidate.getLevel();
+            if (level != candidateLevel) {
+                return level < candidateLevel;
+            }
+        }
+
+        return voice.getStartOrder() < candidate.getStartOrder();
+    }
+}
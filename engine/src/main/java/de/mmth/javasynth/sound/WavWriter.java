@@ -0,0 +1,156 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams a block source into a wave file.
+ * .
+ * The blocks are rendered directly into a reusable direct buffer
+ * and written to the file channel, so the memory usage does not
+ * depend on the length of the sound. The header is written with a
+ * JUNK chunk reserving the space of an RF64 ds64 chunk. When the
+ * file is finished the sizes are patched into the header, files
+ * larger than 4 GB are converted to RF64 in place.
+ * .
+ * A stream can not be patched, so the data size must be known
+ * before the first block, e.g. from the length of the note.
+ */
+public class WavWriter {
+    private static final int BLOCK_FRAMES = 16384;
+    private static final int HEADER_SIZE = 80;
+    private static final int DS64_SIZE = 28;
+    private static final long MAX_RIFF_SIZE = 0xFFFFFFFFL;
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_FLOAT = 3;
+
+    private WavWriter() {
+    }
+
+    /**
+     * Renders the block source into the given file until
+     * the source is exhausted.
+     *
+     * @param source sound to write, must end
+     * @param file destination file, an existing file is overwritten
+     * @return number of audio data bytes
+     * @throws IOException when the file can not be written
+     */
+    public static long write(BlockSource source, Path file) throws IOException {
+        var format = source.getFormat();
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(createHeader(format, 0, false), 0);
+            channel.position(HEADER_SIZE);
+
+            var block = ByteBuffer.allocateDirect(BLOCK_FRAMES * format.getFrameSize());
+            long dataSize = 0;
+            int length;
+            do {
+                block.clear();
+                length = source.read(block);
+                block.flip();
+                while (block.hasRemaining()) {
+                    channel.write(block);
+                }
+                dataSize += length;
+            } while (length > 0);
+
+            var rf64 = (dataSize + HEADER_SIZE - 8) > MAX_RIFF_SIZE;
+            channel.write(createHeader(format, dataSize, rf64), 0);
+            return dataSize;
+        }
+    }
+
+    /**
+     * Renders the block source into a stream, each block is
+     * written as soon as it is rendered.
+     *
+     * @param source sound to write, must end
+     * @param dataSize number of audio data bytes of the source
+     * @param out destination stream, not closed
+     * @return number of audio data bytes written
+     * @throws IOException when the stream can not be written
+     */
+    public static long write(BlockSource source, long dataSize, OutputStream out) throws IOException {
+        var format = source.getFormat();
+        var rf64 = (dataSize + HEADER_SIZE - 8) > MAX_RIFF_SIZE;
+        out.write(createHeader(format, dataSize, rf64).array());
+
+        var block = new byte[BLOCK_FRAMES * format.getFrameSize()];
+        long written = 0;
+        int length;
+        while ((length = source.read(block)) > 0) {
+            out.write(block, 0, length);
+            written += length;
+        }
+
+        return written;
+    }
+
+    /**
+     * Creates the file header.
+     *
+     * @param format audio format of the data
+     * @param dataSize number of audio data bytes
+     * @param rf64 true to create an RF64 header
+     * @return header, ready to write
+     */
+    private static ByteBuffer createHeader(AudioFormat format, long dataSize, boolean rf64) {
+        var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        var riffSize = dataSize + HEADER_SIZE - 8;
+        var frameSize = format.getFrameSize();
+
+        putTag(header, rf64 ? "RF64" : "RIFF");
+        header.putInt(rf64 ? -1 : (int) riffSize);
+        putTag(header, "WAVE");
+
+        putTag(header, rf64 ? "ds64" : "JUNK");
+        header.putInt(DS64_SIZE);
+        if (rf64) {
+            header.putLong(riffSize);
+            header.putLong(dataSize);
+            header.putLong(dataSize / frameSize);
+            header.putInt(0);
+        } else {
+            header.position(header.position() + DS64_SIZE);
+        }
+
+        var sampleRate = (int) format.getSampleRate();
+        putTag(header, "fmt ");
+        header.putInt(16);
+        header.putShort((short) (format.getEncoding() == AudioFormat.Encoding.PCM_FLOAT ? FORMAT_FLOAT : FORMAT_PCM));
+        header.putShort((short) format.getChannels());
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * frameSize);
+        header.putShort((short) frameSize);
+        header.putShort((short) format.getSampleSizeInBits());
+
+        putTag(header, "data");
+        header.putInt(rf64 ? -1 : (int) dataSize);
+        return header.flip();
+    }
+
+    /**
+     * Writes a four character chunk tag.
+     *
+     * @param header destination buffer
+     * @param tag chunk tag
+     */
+    private static void putTag(ByteBuffer header, String tag) {
+        for (var i = 0; i < 4; i++) {
+            header.put((byte) tag.charAt(i));
+        }
+    }
+}
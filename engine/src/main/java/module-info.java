@@ -0,0 +1,10 @@
+module de.mmth.javasynth.engine {
+    requires transitive java.desktop;
+    requires jdk.management;
+    requires jdk.httpserver;
+    requires java.net.http;
+    requires static jdk.incubator.vector;
+
+    exports de.mmth.javasynth.sound;
+    exports de.mmth.javasynth.cli;
+}
@@ -0,0 +1,30 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.cli;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Patch names used for the wave files of the batch renderer.
+ */
+class BatchRendererTest {
+
+    @Test
+    void acceptsPlainNames() {
+        assertEquals("organ", BatchRenderer.checkName("organ"));
+        assertEquals("Flute 8' v2.1", BatchRenderer.checkName("Flute 8' v2.1"));
+    }
+
+    @Test
+    void rejectsNamesLeavingTheOutputDirectory() {
+        for (var name: new String[] {"", "../x", "..", "a/b", "a\\b", "C:x", "/etc/x"}) {
+            assertThrows(IllegalArgumentException.class, () -> BatchRenderer.checkName(name), name);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.cli;
+
+import de.mmth.javasynth.sound.Globals;
+import de.mmth.javasynth.sound.Harmonic;
+import de.mmth.javasynth.sound.ParameterStore;
+import de.mmth.javasynth.sound.PatchBank;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Requests to the render server on the loopback interface.
+ * .
+ * Invalid requests are answered with 400 before they wait for a
+ * render slot, a request is rejected with 503 when no slot becomes
+ * free within the queue timeout.
+ */
+class RenderServerTest {
+    private static final String PATCH = "{\"harmonics\": 4, \"attack\": 0.1, \"sustain\": 0.2}";
+    private static final long QUEUE_TIMEOUT_MILLIS = 200;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private Semaphore renders;
+    private RenderServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void rendersWaveFile() throws IOException, InterruptedException {
+        startServer(2);
+        var response = client.send(json("key=69", PATCH), HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("audio/wav", response.headers().firstValue("Content-Type").orElse(""));
+        var body = response.body();
+        assertArrayEquals("RIFF".getBytes(StandardCharsets.US_ASCII), Arrays.copyOfRange(body, 0, 4));
+        assertArrayEquals("WAVE".getBytes(StandardCharsets.US_ASCII), Arrays.copyOfRange(body, 8, 12));
+        assertEquals(1, server.getNotes());
+    }
+
+    @Test
+    void rejectsInvalidRequests() throws IOException, InterruptedException {
+        startServer(1);
+        // without a free slot only requests checked before the wait get 400
+        renders.acquire();
+        var requests = new HttpRequest[] {
+                json("output=mp3", PATCH),
+                json("", "{\"harmonics\": 4, \"attack\": -1.0}"),
+                json("", "{\"harmonics\": 4, \"sustain\": -1.0}"),
+                json("", "{\"harmonics\": 100000}"),
+                json("key=128", PATCH),
+                binary(new byte[] {1, 2, 3}),
+                binary(PatchBank.encode(new ParameterStore(new Globals(), createHarmonics(70000)).get()))
+        };
+        for (var request: requests) {
+            var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, response.statusCode(), request.uri() + " " + response.body());
+        }
+        assertEquals(0, server.getNotes());
+        assertEquals(0, server.getRejected());
+    }
+
+    @Test
+    void rejectsRequestsWhileSaturated() throws IOException, InterruptedException {
+        startServer(1);
+        // the slot is held like by a running render
+        renders.acquire();
+        var response = client.send(json("", PATCH), HttpResponse.BodyHandlers.ofString());
+        assertEquals(503, response.statusCode());
+        assertEquals(1, server.getRejected());
+
+        renders.release();
+        response = client.send(json("", PATCH), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+    }
+
+    /**
+     * Starts a server on a free port.
+     *
+     * @param maxRenders maximum number of concurrent renders
+     */
+    private void startServer(int maxRenders) throws IOException {
+        renders = new Semaphore(maxRenders, true);
+        server = new RenderServer(0, renders, QUEUE_TIMEOUT_MILLIS);
+        server.start();
+    }
+
+    /**
+     * Creates a render request with a JSON patch.
+     *
+     * @param query query string
+     * @param patch JSON patch
+     * @return request
+     */
+    private HttpRequest json(String query, String patch) {
+        return HttpRequest.newBuilder(uri(query))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(patch))
+                .build();
+    }
+
+    /**
+     * Creates a render request with a binary patch record.
+     *
+     * @param record patch record
+     * @return request
+     */
+    private HttpRequest binary(byte[] record) {
+        return HttpRequest.newBuilder(uri(""))
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(record))
+                .build();
+    }
+
+    /**
+     * Returns the render URI of the server.
+     *
+     * @param query query string, may be empty
+     * @return request URI
+     */
+    private URI uri(String query) {
+        return URI.create("http://localhost:" + server.getPort() + "/render" + (query.isEmpty() ? "" : "?" + query));
+    }
+
+    /**
+     * Creates active harmonics with their default settings.
+     *
+     * @param count number of harmonics
+     * @return harmonic settings
+     */
+    private static Harmonic[] createHarmonics(int count) {
+        var harmonics = new Harmonic[count];
+        for (var i = 0; i < count; i++) {
+            harmonics[i] = new Harmonic(i + 1);
+            harmonics[i].setActive(true);
+        }
+
+        return harmonics;
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Allocations of the real-time render loop.
+ * .
+ * Each render path (direct and spectral, scalar and, when the
+ * Vector API module is loaded, vectorized, all oscillator
+ * qualities) streams notes, the voice engine plays overlapping
+ * held notes and an audio buffer mixes notes into a reusable bus.
+ * The notes are short, so the warm-up runs through the attack,
+ * sustain, decay and end of the notes, and the JIT has compiled
+ * all branches of the loop before the measurement. Live loudness
+ * changes, note on and note off run outside of the measurement,
+ * as they do in the user interface thread.
+ * .
+ * The bytes allocated by this thread are measured around every
+ * block. A late recompilation runs the kernels interpreted for a
+ * few blocks, which allocates, so a path is measured again up to
+ * MAX_ROUNDS times. An allocation of the render loop itself shows
+ * in every round.
+ */
+class AllocationTest {
+    private static final int HARMONICS = 32;
+    private static final int BLOCK_FRAMES = 512;
+    private static final int WARMUP_BLOCKS = 2000;
+    private static final int MEASURED_BLOCKS = 500;
+    private static final int MAX_ROUNDS = 3;
+    private static final int LIVE_CHANGE_BLOCKS = 100;
+    private static final int KEY_BLOCKS = 8;
+    private static final int HOLD_BLOCKS = 20;
+    private static final int VOICES = 8;
+    private static final double PITCH = 220.0;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @BeforeAll
+    static void enableMeasurement() {
+        var bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "thread allocations not available");
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "thread allocations not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    void streamDoesNotAllocate() {
+        var vectorModes = AudioBuffer.isVectorApiAvailable() ? new boolean[] {false, true} : new boolean[] {false};
+        for (var renderMethod: RenderMethod.values()) {
+            for (var vectorized: vectorModes) {
+                for (var quality: OscillatorQuality.values()) {
+                    checkStream(renderMethod, vectorized, quality);
+                }
+            }
+        }
+    }
+
+    @Test
+    void voicesDoNotAllocate() {
+        var synthesis = new Synthesis();
+        synthesis.init(HARMONICS);
+        var globals = synthesis.getGlobals();
+        setShortNotes(globals, synthesis.getHarmonics());
+        synthesis.publish();
+        var voices = synthesis.getVoices();
+
+        // a new key every KEY_BLOCKS, each key is held for HOLD_BLOCKS and then decays
+        assertNoAllocation("voices", () -> voices, i -> {
+            if (i % LIVE_CHANGE_BLOCKS == 0) {
+                changeLoudness(globals);
+                synthesis.publish();
+            }
+            if (i % KEY_BLOCKS == 0) {
+                synthesis.noteOn(key(i / KEY_BLOCKS), System.nanoTime());
+            }
+            if ((i >= HOLD_BLOCKS) && ((i - HOLD_BLOCKS) % KEY_BLOCKS == 0)) {
+                synthesis.noteOff(key((i - HOLD_BLOCKS) / KEY_BLOCKS));
+            }
+        });
+    }
+
+    @Test
+    void mixBusDoesNotAllocate() {
+        for (var renderMethod: RenderMethod.values()) {
+            var globals = new Globals();
+            var harmonics = TestPatches.harmonics(HARMONICS);
+            setShortNotes(globals, harmonics);
+            var parameters = new ParameterStore(globals, harmonics);
+            var audioBuffer = new AudioBuffer(parameters);
+            audioBuffer.setRenderMethod(renderMethod);
+            var bus = new double[BLOCK_FRAMES];
+            var position = new int[1];
+            audioBuffer.prepare(PITCH);
+
+            BlockSource mixer = new BlockSource() {
+                @Override
+                public AudioFormat getFormat() {
+                    return audioBuffer.getFormat();
+                }
+
+                @Override
+                public int read(byte[] block) {
+                    audioBuffer.applyLive();
+                    Arrays.fill(bus, 0.0);
+                    position[0] += audioBuffer.mix(position[0], BLOCK_FRAMES, bus, 0);
+                    return block.length;
+                }
+            };
+            assertNoAllocation("mix bus " + renderMethod, () -> mixer, i -> {
+                if (i % LIVE_CHANGE_BLOCKS == 0) {
+                    changeLoudness(globals);
+                    parameters.publish();
+                }
+                if (position[0] >= audioBuffer.getSampleCount()) {
+                    audioBuffer.prepare(PITCH);
+                    position[0] = 0;
+                }
+            });
+        }
+    }
+
+    /**
+     * Streams one note after the other with the given render settings.
+     *
+     * @param renderMethod direct or spectral rendering
+     * @param vectorized true to use the Vector API kernels
+     * @param quality oscillator quality
+     */
+    private static void checkStream(RenderMethod renderMethod, boolean vectorized, OscillatorQuality quality) {
+        var globals = new Globals();
+        var harmonics = TestPatches.harmonics(HARMONICS);
+        setShortNotes(globals, harmonics);
+        var parameters = new ParameterStore(globals, harmonics);
+        var audioBuffer = new AudioBuffer(parameters);
+        audioBuffer.setRenderMethod(renderMethod);
+        audioBuffer.setVectorized(vectorized);
+        audioBuffer.setQuality(quality);
+        var stream = new AudioStream[1];
+        var noteStart = new int[1];
+
+        var name = String.format("stream %s %s %s", renderMethod, vectorized ? "vector" : "scalar", quality);
+        assertNoAllocation(name, () -> stream[0], i -> {
+            if (i % LIVE_CHANGE_BLOCKS == 0) {
+                changeLoudness(globals);
+                parameters.publish();
+            }
+            if ((stream[0] == null) || ((i - noteStart[0]) * BLOCK_FRAMES >= audioBuffer.getSampleCount())) {
+                audioBuffer.prepare(PITCH);
+                stream[0] = new AudioStream(audioBuffer);
+                stream[0].setGovernor(new CpuGovernor(CpuGovernor.DEFAULT_BUDGET));
+                noteStart[0] = i;
+            }
+        });
+    }
+
+    /**
+     * Reads the warm-up blocks and checks that the following
+     * blocks allocate nothing.
+     *
+     * @param name description of the render path
+     * @param source actual block source, called before every block
+     * @param control changes the patch or the notes before a block
+     */
+    private static void assertNoAllocation(String name, Supplier<? extends BlockSource> source, IntConsumer control) {
+        var blockIndex = 0;
+        control.accept(blockIndex++);
+        var block = new byte[BLOCK_FRAMES * source.get().getFormat().getFrameSize()];
+        for (var i = 0; i < WARMUP_BLOCKS; i++) {
+            source.get().read(block);
+            control.accept(blockIndex++);
+        }
+
+        var allocating = 0;
+        long total = 0;
+        for (var round = 0; round < MAX_ROUNDS; round++) {
+            allocating = 0;
+            total = 0;
+            for (var i = 0; i < MEASURED_BLOCKS; i++) {
+                var reader = source.get();
+                var before = allocatedBytes();
+                reader.read(block);
+                var allocated = allocatedBytes() - before;
+                if (allocated > 0) {
+                    allocating++;
+                    total += allocated;
+                }
+                control.accept(blockIndex++);
+            }
+            if (allocating == 0) {
+                return;
+            }
+        }
+
+        assertEquals(0, total, String.format("%s: %d of %d blocks allocated", name, allocating, MEASURED_BLOCKS));
+    }
+
+    /**
+     * Returns the bytes allocated by this thread so far.
+     *
+     * @return allocated bytes
+     */
+    private static long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    /**
+     * Sets a patch whose notes are one second long, with
+     * short envelopes and a decay within the note.
+     *
+     * @param globals global settings
+     * @param harmonics harmonic settings
+     */
+    private static void setShortNotes(Globals globals, Harmonic[] harmonics) {
+        globals.setAttack(0.3);
+        globals.setSustain(0.3);
+        for (var i = 0; i < harmonics.length; i++) {
+            harmonics[i].setActive(true);
+            harmonics[i].setAttack(0.05);
+            harmonics[i].setFall(0.1);
+            harmonics[i].setDecay(0.2 + 0.01 * i);
+        }
+    }
+
+    /**
+     * Returns the key of a note of the voice test.
+     *
+     * @param note number of the note
+     * @return MIDI key number
+     */
+    private static int key(int note) {
+        return 48 + 5 * (note % VOICES);
+    }
+
+    /**
+     * Changes the loudness, alternating around its start value.
+     *
+     * @param globals global settings
+     */
+    private static void changeLoudness(Globals globals) {
+        globals.setLoudness(globals.getLoudness() * (globals.getLoudness() > 0.5 ? 0.99 : 1.01));
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Render modes of the audio buffer.
+ */
+class AudioBufferTest {
+
+    @Test
+    void parallelRenderMatchesSerialRender() {
+        // note lengths with and without a remainder behind the last chunk
+        for (var sustain: new double[] {0.3, 0.51, 1.0}) {
+            for (var renderMethod: new RenderMethod[] {RenderMethod.DIRECT, RenderMethod.SPECTRAL}) {
+                var globals = new Globals();
+                globals.setSustain(sustain);
+                var parameters = TestPatches.store(globals, 16);
+
+                var serial = new AudioBuffer(parameters);
+                serial.setRenderMethod(renderMethod);
+                serial.updateBuffer();
+                var parallel = new AudioBuffer(parameters);
+                parallel.setRenderMethod(renderMethod);
+                parallel.setParallel(true);
+                parallel.updateBuffer();
+
+                assertArrayEquals(serial.getBuffer(), parallel.getBuffer(), renderMethod + " sustain " + sustain);
+            }
+        }
+    }
+
+    @Test
+    void incrementalRenderMatchesFullRender() {
+        var globals = new Globals();
+        var harmonics = TestPatches.harmonics(32);
+        for (var i = 0; i < harmonics.length; i++) {
+            harmonics[i].setLoudness(0.5 / (i + 1));
+            harmonics[i].setDecay(0.5 + 0.1 * (i % 5));
+        }
+        var parameters = new ParameterStore(globals, harmonics);
+        var incremental = new AudioBuffer(parameters);
+        incremental.setIncremental(true);
+        incremental.setParallel(true);
+        incremental.updateBuffer();
+
+        harmonics[3].setLoudness(0.05);
+        harmonics[3].setDecay(1.3);
+        parameters.publish();
+        incremental.updateBuffer();
+        assertSameSamples(renderFull(parameters), incremental, "harmonic edit");
+
+        globals.setPitch(330.0);
+        parameters.publish();
+        incremental.updateBuffer();
+        assertSameSamples(renderFull(parameters), incremental, "pitch change");
+    }
+
+    @Test
+    void incrementalRenderFollowsOvertoneNumbers() {
+        var globals = new Globals();
+        var odd = new Harmonic[8];
+        var even = new Harmonic[8];
+        for (var i = 0; i < odd.length; i++) {
+            odd[i] = new Harmonic(2 * i + 1);
+            even[i] = new Harmonic(2 * i + 2);
+            odd[i].setActive(true);
+            even[i].setActive(true);
+            // same envelopes, only the overtone numbers differ
+            even[i].setLoudness(odd[i].getLoudness());
+        }
+        var patch = new PatchSnapshot[] {PatchSnapshot.of(1, globals, odd)};
+        var incremental = new AudioBuffer(() -> patch[0]);
+        incremental.setIncremental(true);
+        incremental.updateBuffer();
+
+        patch[0] = PatchSnapshot.of(2, globals, even);
+        incremental.updateBuffer();
+        var full = new AudioBuffer(globals, even);
+        full.updateBuffer();
+        assertSameSamples(full, incremental, "overtone change");
+    }
+
+    @Test
+    void nyquistCullKeepsPartialsBelowNyquist() {
+        // partial n sounds at n * pitch / 2: 2 kHz steps, 11 partials below 22.05 kHz
+        var belowNyquist = renderHighNote(11);
+        var withAliasing = renderHighNote(14);
+
+        assertEquals(11, belowNyquist.getActiveHarmonicCount());
+        assertEquals(11, withAliasing.getActiveHarmonicCount());
+        assertArrayEquals(belowNyquist.getBuffer(), withAliasing.getBuffer());
+    }
+
+    @Test
+    void nyquistCullCountsOnlyAliasingPartials() {
+        var telemetry = new Telemetry();
+        var globals = new Globals();
+        globals.setPitch(4000.0);
+        globals.setSampleRate(44100);
+        var audioBuffer = new AudioBuffer(TestPatches.store(globals, 14));
+        audioBuffer.setTelemetry(telemetry);
+        audioBuffer.prepare();
+
+        assertEquals(3, telemetry.getNyquistCulls());
+    }
+
+    @Test
+    void decayCullCountsEachHarmonicOnce() {
+        var serial = new Telemetry();
+        renderDecayingNote(false, serial).updateBuffer();
+        var parallel = new Telemetry();
+        var parallelBuffer = renderDecayingNote(true, parallel);
+        parallelBuffer.updateBuffer();
+        var streamed = new Telemetry();
+        var streamBuffer = renderDecayingNote(false, streamed);
+        streamBuffer.prepare();
+        var stream = new AudioStream(streamBuffer);
+        var block = new byte[37 * stream.getFormat().getFrameSize()];
+        while (stream.read(block) > 0) {
+            // only the telemetry is checked
+        }
+
+        // the note ends with the longest decay, every harmonic finishes once
+        assertEquals(8, serial.getDecayCulls());
+        assertEquals(8, parallel.getDecayCulls());
+        assertEquals(8, streamed.getDecayCulls());
+    }
+
+    /**
+     * Renders the actual settings without the incremental mode.
+     *
+     * @param parameters patch settings
+     * @return rendered note
+     */
+    private static AudioBuffer renderFull(ParameterStore parameters) {
+        var audioBuffer = new AudioBuffer(parameters);
+        audioBuffer.updateBuffer();
+        return audioBuffer;
+    }
+
+    /**
+     * Compares two 16 bit notes, the summation order of the
+     * incremental mode may change the last bit.
+     *
+     * @param expected full render
+     * @param actual incremental render
+     * @param message description of the change
+     */
+    private static void assertSameSamples(AudioBuffer expected, AudioBuffer actual, String message) {
+        var expectedBytes = expected.getBuffer();
+        var actualBytes = actual.getBuffer();
+        assertEquals(expectedBytes.length, actualBytes.length, message);
+        var maxDifference = 0;
+        for (var i = 0; i < expectedBytes.length; i += 2) {
+            var difference = pcm16(expectedBytes, i) - pcm16(actualBytes, i);
+            maxDifference = Math.max(maxDifference, Math.abs(difference));
+        }
+        assertTrue(maxDifference <= 1, message + ": difference " + maxDifference);
+    }
+
+    /**
+     * Reads a little endian 16 bit sample.
+     *
+     * @param bytes sample bytes
+     * @param pos position of the sample
+     * @return sample value
+     */
+    private static int pcm16(byte[] bytes, int pos) {
+        return (short) ((bytes[pos] & 0xff) | (bytes[pos + 1] << 8));
+    }
+
+    /**
+     * Creates a note with 8 harmonics of different decay lengths.
+     *
+     * @param parallel true to render on all cores
+     * @param telemetry destination of the metrics
+     * @return audio buffer of the note
+     */
+    private static AudioBuffer renderDecayingNote(boolean parallel, Telemetry telemetry) {
+        var harmonics = TestPatches.harmonics(8);
+        for (var i = 0; i < 7; i++) {
+            harmonics[i].setDecay(0.2 * (i + 1));
+        }
+        var audioBuffer = new AudioBuffer(new ParameterStore(new Globals(), harmonics));
+        audioBuffer.setParallel(parallel);
+        audioBuffer.setTelemetry(telemetry);
+        return audioBuffer;
+    }
+
+    /**
+     * Renders a note at 4 kHz pitch and 44.1 kHz sample rate
+     * without the loudness cull.
+     *
+     * @param harmonics number of active harmonics
+     * @return rendered note
+     */
+    private static AudioBuffer renderHighNote(int harmonics) {
+        var globals = new Globals();
+        globals.setPitch(4000.0);
+        globals.setSampleRate(44100);
+        var audioBuffer = new AudioBuffer(TestPatches.store(globals, harmonics));
+        audioBuffer.setCullThreshold(Double.NEGATIVE_INFINITY);
+        audioBuffer.updateBuffer();
+        return audioBuffer;
+    }
+}
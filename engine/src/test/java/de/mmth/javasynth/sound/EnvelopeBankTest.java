@@ -0,0 +1,102 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Block splitting of the harmonic envelopes.
+ * .
+ * A seek which continues within the actual re-seed period must give
+ * the same amplitudes as a seek from the preceding re-seed point,
+ * also after live loudness changes and removed harmonics.
+ */
+class EnvelopeBankTest {
+    private static final int SAMPLE_RATE = 48000;
+    private static final int NOTE_OFF = 20000;
+    private static final int LENGTH = 40000;
+    private static final int LOUDNESS_CHANGE = 9000;
+    private static final int REMOVAL = 25000;
+
+    @Test
+    void continuingSeekMatchesSeekFromGrid() {
+        var harmonics = createHarmonics();
+        var activeIndex = new int[] {0, 1, 2, 3, 4, 5};
+        var loudness = new double[] {0.9, 0.5, 0.4, 0.3, 0.2, 0.1};
+        var count = activeIndex.length;
+        var streaming = new EnvelopeBank();
+        streaming.setup(harmonics, activeIndex, loudness, count, NOTE_OFF, 1.0 / SAMPLE_RATE);
+
+        var position = 0;
+        var blockSize = 37;
+        while (position < LENGTH) {
+            if ((position >= LOUDNESS_CHANGE) && (loudness[0] == 0.9)) {
+                loudness[0] = 0.6;
+                streaming.setLoudness(loudness);
+            }
+            if ((position >= REMOVAL) && (count == activeIndex.length)) {
+                // harmonic 2 is dropped, the following ones move up
+                System.arraycopy(activeIndex, 3, activeIndex, 2, 3);
+                System.arraycopy(loudness, 3, loudness, 2, 3);
+                count--;
+                streaming.remove(2);
+            }
+
+            streaming.seek(position);
+            var reference = new EnvelopeBank();
+            reference.setup(harmonics, activeIndex, loudness, count, NOTE_OFF, 1.0 / SAMPLE_RATE);
+            reference.seek(position);
+            for (var i = 0; (i < blockSize) && (position < LENGTH); i++) {
+                assertEquals(Arrays.toString(Arrays.copyOf(reference.amplitudes(), count)),
+                        Arrays.toString(Arrays.copyOf(streaming.amplitudes(), count)), "at " + position);
+                advance(streaming, count);
+                advance(reference, count);
+                position++;
+            }
+            blockSize = blockSize * 7 % 601 + 1;
+        }
+    }
+
+    /**
+     * Advances the amplitudes by one sample like the scalar
+     * render kernel.
+     *
+     * @param bank envelopes to advance
+     * @param count number of harmonics
+     */
+    private static void advance(EnvelopeBank bank, int count) {
+        var amplitudes = bank.amplitudes();
+        var multipliers = bank.multipliers();
+        var increments = bank.increments();
+        for (var k = 0; k < count; k++) {
+            amplitudes[k] = amplitudes[k] * multipliers[k] + increments[k];
+        }
+        bank.next();
+    }
+
+    /**
+     * Creates harmonics with linear and exponential segments
+     * of different lengths.
+     *
+     * @return settings of all harmonics
+     */
+    private static HarmonicBank createHarmonics() {
+        var harmonics = TestPatches.harmonics(6);
+        for (var i = 0; i < harmonics.length; i++) {
+            harmonics[i].setAttack(0.01 + 0.03 * i);
+            harmonics[i].setFall(0.05 * i);
+            harmonics[i].setSustainLevel(1.0 - 0.1 * i);
+            harmonics[i].setDecay(0.1 + 0.07 * i);
+            harmonics[i].setCurve(i % 2 == 0 ? EnvelopeCurve.LINEAR : EnvelopeCurve.EXPONENTIAL);
+        }
+
+        return HarmonicBank.of(harmonics);
+    }
+}
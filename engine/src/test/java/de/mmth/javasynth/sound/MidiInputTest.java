@@ -0,0 +1,162 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Note on of the MIDI input, without audio or MIDI hardware.
+ * .
+ * A note on with pre-rendered note heads copies the head instead
+ * of rendering, its first block must be the block of a voice which
+ * renders the note itself. The keys sound at their equal tempered
+ * frequency.
+ * .
+ * A synthetic sequence played by the sequencer of the JDK measures
+ * the latency from the note on to the first block of the note. The
+ * blocks are read at the pace of an output line, so the latency is
+ * at most one block period plus the time of the note on and the
+ * block render.
+ */
+class MidiInputTest {
+    private static final int HARMONICS = 64;
+    private static final int KEY = 60;
+    private static final int BLOCK_FRAMES = 512;
+    private static final long PRERENDER_TIMEOUT_MILLIS = 30_000;
+    private static final int SEQUENCE_NOTES = 8;
+    private static final int NOTE_TICKS = 240;
+    private static final double LATENCY_BOUND_MILLIS = 50.0;
+
+    @Test
+    void noteOnWithNoteHeadMatchesFreshRender() throws InvalidMidiDataException, InterruptedException {
+        var prewarmed = createSynthesis();
+        prewarmed.setKeyPrerender(true);
+        var deadline = System.currentTimeMillis() + PRERENDER_TIMEOUT_MILLIS;
+        while (!prewarmed.isKeyCacheCurrent() && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertTrue(prewarmed.isKeyCacheCurrent(), "note heads not rendered");
+        var fresh = createSynthesis();
+
+        assertArrayEquals(firstBlock(fresh), firstBlock(prewarmed));
+    }
+
+    @Test
+    void keysSoundAtEqualTemperedFrequency() {
+        var globals = new Globals();
+        globals.setSampleRate(44100);
+        var audioBuffer = new AudioBuffer(globals, TestPatches.harmonics(1));
+        for (var key: new int[] {57, 69, 81}) {
+            audioBuffer.prepareHeld(MidiInput.keyToPitch(key));
+            var samples = new double[globals.getSampleRate()];
+            audioBuffer.mix(0, samples.length, samples, 0);
+
+            var periods = 0;
+            for (var i = 1; i < samples.length; i++) {
+                if ((samples[i - 1] < 0.0) && (samples[i] >= 0.0)) {
+                    periods++;
+                }
+            }
+            var expected = 440.0 * Math.pow(2.0, (key - 69) / 12.0);
+            assertEquals(expected, periods, 1.0, "key " + key);
+        }
+    }
+
+    @Test
+    void sequenceNotesRecordTheirLatency() throws InvalidMidiDataException, MidiUnavailableException {
+        var synthesis = createSynthesis();
+        var sequencer = MidiSystem.getSequencer(false);
+        sequencer.open();
+        try {
+            sequencer.getTransmitter().setReceiver(new MidiInput(synthesis, voices -> { }));
+            sequencer.setSequence(createSequence());
+            var voices = synthesis.getVoices();
+            var block = new byte[BLOCK_FRAMES * voices.getFormat().getFrameSize()];
+            var blockNanos = (long) (TimeUnit.SECONDS.toNanos(BLOCK_FRAMES) / voices.getFormat().getSampleRate());
+
+            // the blocks are read in real time like by the output line
+            sequencer.start();
+            var next = System.nanoTime();
+            while (sequencer.isRunning()) {
+                voices.read(block);
+                next += blockNanos;
+                LockSupport.parkNanos(next - System.nanoTime());
+            }
+            voices.read(block);
+        } finally {
+            sequencer.close();
+        }
+
+        var noteLatency = synthesis.getTelemetry().getNoteLatency();
+        assertEquals(SEQUENCE_NOTES, noteLatency.getCount());
+        assertTrue(noteLatency.getMax() <= LATENCY_BOUND_MILLIS, "latency " + noteLatency.getMax() + " ms");
+    }
+
+    /**
+     * Creates a sequence of eighth notes on rising keys,
+     * one note on every quarter note.
+     *
+     * @return sequence with one track
+     */
+    private static Sequence createSequence() throws InvalidMidiDataException {
+        var sequence = new Sequence(Sequence.PPQ, 480);
+        var track = sequence.createTrack();
+        for (var i = 0; i < SEQUENCE_NOTES; i++) {
+            var key = KEY + 2 * i;
+            var tick = (long) i * NOTE_TICKS;
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, key, 100), tick));
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, key, 0), tick + NOTE_TICKS / 2));
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Creates a synthesis with all harmonics active.
+     *
+     * @return synthesis with published settings
+     */
+    private static Synthesis createSynthesis() {
+        var synthesis = new Synthesis();
+        synthesis.init(HARMONICS);
+        for (var harmonic: synthesis.getHarmonics()) {
+            harmonic.setActive(true);
+        }
+        synthesis.publish();
+        return synthesis;
+    }
+
+    /**
+     * Sends a note on into the MIDI input and reads the
+     * first block of the voice engine.
+     *
+     * @param synthesis synthesis receiving the note
+     * @return first block
+     */
+    private static byte[] firstBlock(Synthesis synthesis) throws InvalidMidiDataException {
+        var output = new BlockSource[1];
+        var midiInput = new MidiInput(synthesis, voices -> output[0] = voices);
+        midiInput.send(new ShortMessage(ShortMessage.NOTE_ON, 0, KEY, 100), -1);
+        assertTrue(output[0] != null, "note on not passed to the output");
+
+        var block = new byte[BLOCK_FRAMES * output[0].getFormat().getFrameSize()];
+        output[0].read(block);
+        return block;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Accuracy of the oscillator quality tiers against Math.sin.
+ * .
+ * The output is quantized to at least 16 bit, so a tier must stay
+ * well below one LSB (1 / 32768, about 3e-5) for every harmonic.
+ * The bounds are the measured maximum errors with some headroom:
+ * the interpolated wavetable is limited by the table size, the
+ * recursive rotation by the drift within one re-seed period and,
+ * late in long notes, by the rounding of the large phase angles.
+ * .
+ * A seek which continues within the actual re-seed period must give
+ * the same values as a seek from the preceding re-seed point.
+ */
+class OscillatorBankTest {
+    private static final double WAVETABLE_TOLERANCE = 1e-6;
+    private static final double RECURSIVE_TOLERANCE = 1e-8;
+    private static final int PERIODS = 8;
+    private static final int DELTAS = 200;
+
+    @Test
+    void exactMatchesMathSin() {
+        assertEquals(0.0, maxError(OscillatorQuality.EXACT, 0));
+    }
+
+    @Test
+    void wavetableStaysWithinTolerance() {
+        var error = maxError(OscillatorQuality.WAVETABLE, 0);
+        assertTrue(error <= WAVETABLE_TOLERANCE, "wavetable error " + error);
+    }
+
+    @Test
+    void recursiveStaysWithinTolerance() {
+        var error = maxError(OscillatorQuality.RECURSIVE, 0);
+        assertTrue(error <= RECURSIVE_TOLERANCE, "recursive error " + error);
+    }
+
+    @Test
+    void toleranceHoldsLateInLongNotes() {
+        var start = 60 * 48000;
+        assertTrue(maxError(OscillatorQuality.WAVETABLE, start) <= WAVETABLE_TOLERANCE);
+        assertTrue(maxError(OscillatorQuality.RECURSIVE, start) <= RECURSIVE_TOLERANCE);
+    }
+
+    @Test
+    void continuingSeekMatchesSeekFromGrid() {
+        var deltas = new double[] {0.01, 0.3, 1.1, 2.9, 3.1};
+        for (var quality: new OscillatorQuality[] {OscillatorQuality.WAVETABLE, OscillatorQuality.RECURSIVE}) {
+            var streaming = new OscillatorBank();
+            streaming.setQuality(quality);
+            streaming.setup(deltas, deltas.length);
+            var position = 0;
+            var blockSize = 37;
+            while (position < PERIODS * OscillatorBank.RESEED_INTERVAL) {
+                // fewer oscillators in some blocks, like finished decays
+                var active = (position / 1000) % 2 == 0 ? deltas.length : 3;
+                streaming.setActiveCount(active);
+                streaming.seek(position);
+                var reference = new OscillatorBank();
+                reference.setQuality(quality);
+                reference.setup(deltas, deltas.length);
+                reference.setActiveCount(active);
+                reference.seek(position);
+                for (var i = 0; i < blockSize; i++) {
+                    for (var k = 0; k < active; k++) {
+                        assertEquals(reference.values()[k], streaming.values()[k], quality + " at " + position);
+                    }
+                    streaming.next();
+                    reference.next();
+                    position++;
+                }
+                blockSize = blockSize * 7 % 601 + 1;
+            }
+        }
+    }
+
+    /**
+     * Runs one bank over several re-seed periods with phase
+     * increments from nearly 0 up to the Nyquist frequency.
+     *
+     * @param quality oscillator quality
+     * @param start first sample position
+     * @return maximum absolute error against Math.sin
+     */
+    private static double maxError(OscillatorQuality quality, int start) {
+        var deltas = new double[DELTAS];
+        for (var k = 0; k < DELTAS; k++) {
+            deltas[k] = Math.PI * (k + 0.5) / DELTAS;
+        }
+
+        var bank = new OscillatorBank();
+        bank.setQuality(quality);
+        bank.setup(deltas, DELTAS);
+        bank.seek(start);
+        var error = 0.0;
+        for (var position = start; position < start + PERIODS * OscillatorBank.RESEED_INTERVAL; position++) {
+            var values = bank.values();
+            for (var k = 0; k < DELTAS; k++) {
+                error = Math.max(error, Math.abs(values[k] - Math.sin(deltas[k] * position)));
+            }
+            bank.next();
+        }
+
+        return error;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Reading corrupt patch records.
+ * .
+ * The harmonics count of a record or an index entry must be
+ * checked before any array is allocated, a count whose length
+ * overflows an int must not match a short record.
+ */
+class PatchBankTest {
+    // 48 + 46 * count overflows to 64 bytes
+    private static final int OVERFLOWING_COUNT = 280106563;
+    private static final int INDEX_ENTRY = 64;
+    private static final int COUNT_POS = 12;
+    private static final int ENTRY_COUNT_POS = INDEX_ENTRY + PatchBank.MAX_NAME_BYTES + 8;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void recordsSurviveTheRoundTrip() throws IOException {
+        var patch = TestPatches.store(new Globals(), 5).get();
+        var decoded = PatchBank.decode(ByteBuffer.wrap(PatchBank.encode(patch)));
+
+        assertEquals(5, decoded.harmonics().size());
+        assertEquals(patch.harmonics().loudness(3), decoded.harmonics().loudness(3));
+        assertEquals(patch.sampleRate(), decoded.sampleRate());
+    }
+
+    @Test
+    void decodeRejectsOverflowingCount() {
+        assertThrows(IOException.class, () -> PatchBank.decode(record(64, OVERFLOWING_COUNT)));
+    }
+
+    @Test
+    void decodeRejectsInvalidCounts() {
+        assertThrows(IOException.class, () -> PatchBank.decode(record(64, -1)));
+        assertThrows(IOException.class, () -> PatchBank.decode(record(64, PatchBank.MAX_HARMONICS + 1)));
+    }
+
+    @Test
+    void loadRejectsOverflowingIndexEntry() throws IOException {
+        var file = tempDir.resolve("bank.jspb");
+        try (var bank = PatchBank.create(file, 4)) {
+            bank.add("corrupt", TestPatches.store(new Globals(), 3).get());
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            var entry = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(OVERFLOWING_COUNT).putInt(64).flip();
+            channel.write(entry, ENTRY_COUNT_POS);
+        }
+
+        try (var bank = PatchBank.open(file, false)) {
+            assertThrows(IOException.class, () -> bank.load(0));
+        }
+    }
+
+    @Test
+    void openRejectsInvalidPatchCount() throws IOException {
+        var file = tempDir.resolve("count.jspb");
+        try (var bank = PatchBank.create(file, 4)) {
+            bank.add("first", TestPatches.store(new Globals(), 3).get());
+        }
+        for (var count: new int[] {-1, 5}) {
+            try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                var header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(count).flip();
+                channel.write(header, COUNT_POS);
+            }
+
+            assertThrows(IOException.class, () -> PatchBank.open(file, false), "count " + count);
+        }
+    }
+
+    /**
+     * Creates a record with valid settings and the given harmonics count.
+     *
+     * @param length record length in bytes
+     * @param count harmonics count of the record header
+     * @return patch record
+     */
+    private static ByteBuffer record(int length, int count) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(32, Globals.MIN_SAMPLE_RATE)
+                .putInt(36, 0)
+                .putInt(40, count);
+    }
+}
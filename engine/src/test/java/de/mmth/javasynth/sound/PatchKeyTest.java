@@ -0,0 +1,81 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Render cache keys: equal keys must render equal notes.
+ */
+class PatchKeyTest {
+    private record Rendered(AudioBuffer note, PatchSnapshot patch) {
+    }
+
+    @Test
+    void skippedAttackDoesNotChangeTheNoteLength() {
+        // with the attack the note length would cross the next full second
+        var withAttack = new Globals();
+        withAttack.setAttack(0.005);
+        withAttack.setSustain(0.998);
+        var withoutAttack = new Globals();
+        withoutAttack.setAttack(0.0);
+        withoutAttack.setSustain(0.998);
+
+        var first = render(withAttack);
+        var second = render(withoutAttack);
+        assertEquals(key(first.patch()), key(second.patch()));
+        assertArrayEquals(first.note().getBuffer(), second.note().getBuffer());
+    }
+
+    @Test
+    void renderedSegmentsKeepTheirLength() {
+        var shortAttack = new Globals();
+        shortAttack.setAttack(0.01);
+        var longAttack = new Globals();
+        longAttack.setAttack(0.02);
+
+        assertNotEquals(key(render(shortAttack).patch()), key(render(longAttack).patch()));
+    }
+
+    @Test
+    void renderSettingsArePartOfTheKey() {
+        var patch = render(new Globals()).patch();
+        var key = key(patch);
+
+        assertEquals(key, PatchKey.of(patch, OscillatorQuality.RECURSIVE, RenderMethod.AUTO,
+                AudioBuffer.DEFAULT_CULL_THRESHOLD));
+        assertNotEquals(key, PatchKey.of(patch, OscillatorQuality.RECURSIVE, RenderMethod.SPECTRAL,
+                AudioBuffer.DEFAULT_CULL_THRESHOLD));
+        assertNotEquals(key, PatchKey.of(patch, OscillatorQuality.RECURSIVE, RenderMethod.AUTO, -60.0));
+    }
+
+    /**
+     * Creates the key of a patch with the default render settings.
+     *
+     * @param patch patch settings
+     * @return cache key
+     */
+    private static PatchKey key(PatchSnapshot patch) {
+        return PatchKey.of(patch, OscillatorQuality.RECURSIVE, RenderMethod.AUTO, AudioBuffer.DEFAULT_CULL_THRESHOLD);
+    }
+
+    /**
+     * Renders a note with two harmonics.
+     *
+     * @param globals global settings
+     * @return rendered note and its snapshot
+     */
+    private static Rendered render(Globals globals) {
+        var parameters = TestPatches.store(globals, 2);
+        var audioBuffer = new AudioBuffer(parameters);
+        audioBuffer.updateBuffer();
+        return new Rendered(audioBuffer, parameters.get());
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Accuracy of the spectral engine against the exact direct render.
+ * .
+ * The error is the energy of the difference relative to the energy
+ * of the direct render, per note segment. Over the pitches below the
+ * worst cases are -68 dB in the attack and sustain and -56 dB in the
+ * decay, where the amplitude ramps are approximated by the window
+ * cross fade. The bounds leave 2 dB headroom.
+ * .
+ * The partials are placed into the frame spectrum relative to the
+ * FFT bins, so the pitches include fundamentals on a bin, half way
+ * between two bins and just beside both.
+ */
+class SpectralEngineTest {
+    private static final double SUSTAIN_BOUND = -66.0;
+    private static final double DECAY_BOUND = -54.0;
+    private static final int PARTIALS = 48;
+    private static final double ATTACK = 0.2;
+    private static final double SUSTAIN = 0.3;
+    private static final int SAMPLE_RATE = 44100;
+
+    @Test
+    void pitchSweepStaysWithinBound() {
+        for (var pitch = 55.0; pitch < 1800.0; pitch *= Math.pow(2.0, 5.0 / 12.0)) {
+            checkPitch(pitch);
+        }
+    }
+
+    @Test
+    void partialsNearBinBoundariesStayWithinBound() {
+        // the fundamental sounds at pitch / 2, one bin is sampleRate / FRAME_SIZE
+        var binPitch = 2.0 * SAMPLE_RATE / SpectralEngine.FRAME_SIZE;
+        for (var bin: new int[] {3, 10, 17}) {
+            for (var offset: new double[] {0.0, 0.5, 0.001, -0.001, 0.499, 0.501}) {
+                checkPitch((bin + offset) * binPitch);
+            }
+        }
+    }
+
+    @Test
+    void blockSplitDoesNotChangeTheResult() {
+        var spectral = createNote(RenderMethod.SPECTRAL, 440.0);
+        assertArrayEquals(render(spectral, 4096), render(spectral, 333));
+    }
+
+    /**
+     * Compares the spectral render of one pitch with the
+     * exact direct render, segment by segment.
+     *
+     * @param pitch pitch of the note
+     */
+    private static void checkPitch(double pitch) {
+        var direct = render(createNote(RenderMethod.DIRECT, pitch), 4096);
+        var spectral = render(createNote(RenderMethod.SPECTRAL, pitch), 4096);
+
+        var attackEnd = (int) Math.round(ATTACK * SAMPLE_RATE);
+        var sustainEnd = attackEnd + (int) Math.round(SUSTAIN * SAMPLE_RATE);
+        assertWithin(direct, spectral, 0, attackEnd, SUSTAIN_BOUND, "attack", pitch);
+        assertWithin(direct, spectral, attackEnd, sustainEnd, SUSTAIN_BOUND, "sustain", pitch);
+        assertWithin(direct, spectral, sustainEnd, direct.length, DECAY_BOUND, "decay", pitch);
+    }
+
+    /**
+     * Checks the relative error energy of a segment.
+     *
+     * @param expected exact samples
+     * @param actual spectral samples
+     * @param first first sample of the segment
+     * @param end end of the segment (exclusive)
+     * @param bound maximum error in dB
+     * @param segment name of the segment
+     * @param pitch pitch of the note
+     */
+    private static void assertWithin(double[] expected, double[] actual, int first, int end,
+                                     double bound, String segment, double pitch) {
+        var error = 0.0;
+        var power = 0.0;
+        for (var i = first; i < end; i++) {
+            var difference = expected[i] - actual[i];
+            error += difference * difference;
+            power += expected[i] * expected[i];
+        }
+
+        var decibels = 10.0 * Math.log10(error / power);
+        assertTrue(decibels <= bound, String.format("%s at pitch %.3f: %.1f dB", segment, pitch, decibels));
+    }
+
+    /**
+     * Creates a note with partials of falling loudness and
+     * different decay lengths.
+     *
+     * @param renderMethod direct or spectral rendering
+     * @param pitch pitch of the note
+     * @return audio buffer of the note
+     */
+    private static AudioBuffer createNote(RenderMethod renderMethod, double pitch) {
+        var globals = new Globals();
+        globals.setPitch(pitch);
+        globals.setSampleRate(SAMPLE_RATE);
+        globals.setAttack(ATTACK);
+        globals.setSustain(SUSTAIN);
+        globals.setLoudness(0.8);
+        var random = new Random(1);
+        var harmonics = TestPatches.harmonics(PARTIALS);
+        for (var i = 0; i < PARTIALS; i++) {
+            harmonics[i].setLoudness(0.5 / (i + 1));
+            harmonics[i].setDecay(0.5 + random.nextDouble() * 0.5);
+        }
+
+        var audioBuffer = new AudioBuffer(globals, harmonics);
+        audioBuffer.setQuality(OscillatorQuality.EXACT);
+        audioBuffer.setRenderMethod(renderMethod);
+        audioBuffer.setCullThreshold(Double.NEGATIVE_INFINITY);
+        return audioBuffer;
+    }
+
+    /**
+     * Mixes the whole note block by block.
+     *
+     * @param audioBuffer note to render
+     * @param blockSize samples per block
+     * @return mixed samples
+     */
+    private static double[] render(AudioBuffer audioBuffer, int blockSize) {
+        audioBuffer.prepare();
+        var samples = new double[audioBuffer.getSampleCount()];
+        for (var first = 0; first < samples.length; first += blockSize) {
+            audioBuffer.mix(first, Math.min(blockSize, samples.length - first), samples, first);
+        }
+
+        return samples;
+    }
+}
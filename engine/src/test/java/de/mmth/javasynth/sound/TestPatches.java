@@ -0,0 +1,41 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.sound;
+
+/**
+ * Patches for the tests.
+ */
+final class TestPatches {
+    private TestPatches() {
+    }
+
+    /**
+     * Creates harmonics with their default settings, all active.
+     *
+     * @param count number of harmonics
+     * @return harmonic settings
+     */
+    static Harmonic[] harmonics(int count) {
+        var harmonics = new Harmonic[count];
+        for (var i = 0; i < count; i++) {
+            harmonics[i] = new Harmonic(i + 1);
+            harmonics[i].setActive(true);
+        }
+
+        return harmonics;
+    }
+
+    /**
+     * Creates a parameter store with the given global settings.
+     *
+     * @param globals global settings
+     * @param count number of active harmonics
+     * @return parameter store with the published patch
+     */
+    static ParameterStore store(Globals globals, int count) {
+        return new ParameterStore(globals, harmonics(count));
+    }
+}
@@ -16,17 +16,23 @@ import javafx.stage.Stage;
  * .
  * Tone generation is done additive instead of the more
  * analog subtractive filter approach.
+ * .
+ * The number of harmonics is set with the command line
+ * parameter --harmonics=n, the default is 8.
  */
 public class JavaSynth extends Application {
+    private static final int DEFAULT_HARMONICS = 8;
+
     private MainPane mainPane;
 
     @Override
     public void start(Stage stage) {
         var root = new Group();
-        mainPane = new MainPane(8);
+        var harmonics = getParameters().getNamed().get("harmonics");
+        mainPane = new MainPane(harmonics == null ? DEFAULT_HARMONICS : Integer.parseInt(harmonics));
         root.getChildren().add(mainPane);
 
-        Scene scene = new Scene(root, 1100, 550);
+        Scene scene = new Scene(root, 1400, 600);
         stage.setTitle("JavaSynth");
         stage.setScene(scene);
         stage.show();
@@ -39,6 +45,6 @@ public class JavaSynth extends Application {
     }
 
     public static void main(String[] args) {
-        launch();
+        launch(args);
     }
 }
\ No newline at end of file
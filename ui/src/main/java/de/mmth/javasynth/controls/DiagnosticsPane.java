@@ -0,0 +1,125 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.controls;
+
+import de.mmth.javasynth.sound.RenderCache;
+import de.mmth.javasynth.sound.Telemetry;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.util.Duration;
+
+/**
+ * JavaFx user interface which shows the performance
+ * metrics of the synthesis and the audio output.
+ * The values are refreshed twice per second.
+ */
+public class DiagnosticsPane extends VBox {
+    private static final Duration REFRESH_INTERVAL = Duration.millis(500);
+
+    private final Telemetry telemetry;
+    private final RenderCache renderCache;
+    private final GridPane grid = new GridPane();
+    private int lines;
+
+    private final Label renderTime = addValue("Render time");
+    private final Label renderFactor = addValue("Render RTF");
+    private final Label allocated = addValue("Allocated");
+    private final Label blockTime = addValue("Block time");
+    private final Label blockFactor = addValue("Block RTF");
+    private final Label blockAllocated = addValue("Block allocated");
+    private final Label underruns = addValue("Underruns");
+    private final Label latency = addValue("Latency");
+    private final Label noteLatency = addValue("Note latency");
+    private final Label partials = addValue("Partials");
+    private final Label voices = addValue("Voices");
+    private final Label culled = addValue("Culled");
+    private final Label governor = addValue("Governor");
+    private final Label cache = addValue("Cache");
+
+    /**
+     * Constructor with injected metrics.
+     *
+     * @param telemetry performance metrics
+     * @param renderCache cache of rendered notes
+     */
+    public DiagnosticsPane(Telemetry telemetry, RenderCache renderCache) {
+        this.telemetry = telemetry;
+        this.renderCache = renderCache;
+        this.setSpacing(20.0);
+
+        var headerLabel = new Label("Diagnostics");
+        headerLabel.setStyle("-fx-font-size: 14pt; -fx-font-weight: bold");
+
+        grid.setStyle("-fx-border-color: #808080; -fx-border-radius: 5px; -fx-background-color: #f0f0f0; -fx-padding: 5px;");
+        var shadow = new DropShadow(20.0, 3.0, 3.0, new Color(0.75, 0.75, 1.0, 1.0));
+        grid.setEffect(shadow);
+        grid.setHgap(15.0);
+        grid.setVgap(5.0);
+
+        var resetButton = new Button("Reset");
+        resetButton.setOnAction(ev -> {
+            telemetry.reset();
+            refresh();
+        });
+
+        this.getChildren().addAll(headerLabel, grid, resetButton);
+
+        var timeline = new Timeline(new KeyFrame(REFRESH_INTERVAL, ev -> refresh()));
+        timeline.setCycleCount(Timeline.INDEFINITE);
+        timeline.play();
+    }
+
+    /**
+     * Copies the actual metrics into the labels.
+     */
+    private void refresh() {
+        var render = telemetry.getRenderTime();
+        renderTime.setText(String.format("%.1f ms (max %.1f ms)", render.getMean(), render.getMax()));
+        renderFactor.setText(String.format("%.1f", telemetry.getRenderRealTimeFactor()));
+        var bytes = telemetry.getAllocatedBytes();
+        allocated.setText(bytes < 0 ? "-" : String.format("%.1f KB", bytes / 1024.0));
+
+        var block = telemetry.getBlockTime();
+        blockTime.setText(String.format("%.2f ms (p99 %.2f ms)", block.getMean(), block.getPercentile(99)));
+        blockFactor.setText(String.format("%.1f", telemetry.getBlockRealTimeFactor()));
+        var blockBytes = telemetry.getBlockAllocatedBytes();
+        blockAllocated.setText(blockBytes < 0 ? "-"
+                : String.format("%d bytes (%d allocating blocks)", blockBytes, telemetry.getAllocatingBlocks()));
+        underruns.setText(Long.toString(telemetry.getUnderruns()));
+
+        var start = telemetry.getLatency();
+        latency.setText(String.format("%.1f ms (p99 %.1f ms)", start.getMean(), start.getPercentile(99)));
+        var note = telemetry.getNoteLatency();
+        noteLatency.setText(String.format("%.1f ms (p99 %.1f ms)", note.getMean(), note.getPercentile(99)));
+        partials.setText(Integer.toString(telemetry.getActivePartials()));
+        voices.setText(Integer.toString(telemetry.getActiveVoices()));
+        culled.setText(String.format("%d nyquist, %d silent, %d decayed",
+                telemetry.getNyquistCulls(), telemetry.getSilentCulls(), telemetry.getDecayCulls()));
+        var drops = telemetry.getGovernorDrops();
+        governor.setText(drops == 0 ? "0 drops" : String.format("%d drops, last %s", drops, telemetry.getLastDrop()));
+        cache.setText(String.format("%d hits, %d misses", renderCache.getHits(), renderCache.getMisses()));
+    }
+
+    /**
+     * Adds a line with a name and a value label to the grid.
+     *
+     * @param labelText metric name
+     * @return label of the value
+     */
+    private Label addValue(String labelText) {
+        lines++;
+        grid.add(new Label(labelText), 1, lines);
+        var value = new Label("-");
+        grid.add(value, 2, lines);
+        return value;
+    }
+}
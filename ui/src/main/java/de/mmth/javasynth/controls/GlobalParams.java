@@ -0,0 +1,262 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.controls;
+
+import de.mmth.javasynth.sound.Audio;
+import de.mmth.javasynth.sound.Globals;
+import de.mmth.javasynth.sound.MidiInput;
+import de.mmth.javasynth.sound.SampleFormat;
+import de.mmth.javasynth.sound.Synthesis;
+import javafx.application.Platform;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiUnavailableException;
+import java.util.concurrent.CancellationException;
+
+/**
+ * JavaFx user interface for all global properties
+ * like loudness or pitch.
+ */
+public class GlobalParams extends VBox {
+    private final Globals globals;
+    private final Synthesis synthesis;
+    private final Audio audio;
+    private final MidiInput midiInput;
+    private Waveform waveform;
+
+    /**
+     * Constructor with injected globals data.
+     * All user interface settings will be
+     * bound to this object.
+     *
+     * @param synthesis data like loudness or pitch
+     * @param audio output of the notes
+     * @param midiInput keyboard input of the voice engine
+     */
+    public GlobalParams(Synthesis synthesis, Audio audio, MidiInput midiInput) {
+        this.synthesis = synthesis;
+        this.audio = audio;
+        this.midiInput = midiInput;
+        this.globals = synthesis.getGlobals();
+        this.setSpacing(20.0);
+        addHeader();
+        addSliders();
+        addActionButtons();
+        addWaveform();
+        audio.start();
+    }
+
+    private void addWaveform() {
+        var wavePane = new Pane();
+        wavePane.setStyle("-fx-border-color: #808080; -fx-border-radius: 5px; -fx-background-color: #f0f0f0;");
+        var shadow = new DropShadow(20.0, 3.0, 3.0, new Color(1.0, 0.75, 1.0, 1.0));
+        wavePane.setEffect(shadow);
+
+        waveform = new Waveform(250, 200);
+        wavePane.getChildren().add(waveform);
+        this.getChildren().add(wavePane);
+    }
+
+    /**
+     * Adds the user actions like play or quit
+     * to the user interface.
+     */
+    private void addActionButtons() {
+        var box = new VBox();
+        box.setSpacing(5.0);
+        box.setStyle("-fx-border-color: #808080; -fx-border-radius: 5px; -fx-background-color: #f0f0f0;");
+        var shadow = new DropShadow(20.0, 3.0, 3.0, new Color(1.0, 1.0, 0.75, 1.0));
+        box.setEffect(shadow);
+
+        var streaming = new CheckBox("Streaming");
+        var polyphonic = new CheckBox("Polyphonic");
+
+        var startButton = new Button("Play");
+        startButton.setOnAction(ev -> {
+            if (polyphonic.isSelected()) {
+                synthesis.noteOn(globals.getPitch());
+                if (!audio.isStreaming(synthesis.getVoices())) {
+                    audio.streamAudio(synthesis.getVoices());
+                }
+            } else if (streaming.isSelected()) {
+                audio.streamAudio(synthesis.stream());
+            } else {
+                playRendered(System.nanoTime());
+            }
+        });
+
+        var stopButton = new Button("Stop");
+        stopButton.setOnAction(ev -> {
+            audio.stopPlayer();
+            synthesis.getVoices().allNotesOff();
+        });
+
+        var quitButton = new Button("Quit");
+        quitButton.setOnAction(ev -> {
+            Platform.exit();
+        });
+        box.getChildren().addAll(startButton, stopButton, quitButton, streaming, polyphonic,
+                new Label("MIDI input"), createMidiChoice());
+        this.getChildren().add(box);
+    }
+
+    /**
+     * Plays the rendered note of the actual settings. When newer
+     * settings cancel the render, the note of the newer settings
+     * is played instead. Failures are reported on the JavaFx thread.
+     * The latency is measured from the button press, it includes
+     * the render.
+     *
+     * @param requestTime System.nanoTime() of the button press
+     */
+    private void playRendered(long requestTime) {
+        synthesis.render().whenCompleteAsync((note, error) -> {
+            if (error == null) {
+                audio.playAudioBuffer(note, requestTime);
+                waveform.updateView(note.getPeaks());
+            } else if (error instanceof CancellationException) {
+                playRendered(requestTime);
+            } else {
+                System.out.println("Render failed: " + error.getMessage());
+                new Alert(Alert.AlertType.ERROR, "Render failed: " + error.getMessage()).show();
+            }
+        }, Platform::runLater);
+    }
+
+    /**
+     * Creates the selection of the MIDI input device,
+     * the first entry disconnects the MIDI input.
+     *
+     * @return choice box with all MIDI input devices
+     */
+    private ChoiceBox<String> createMidiChoice() {
+        var devices = MidiInput.listDevices();
+        var midiChoice = new ChoiceBox<String>();
+        midiChoice.getItems().add("None");
+        for (MidiDevice.Info info: devices) {
+            midiChoice.getItems().add(info.getName());
+        }
+        midiChoice.getSelectionModel().select(0);
+        midiChoice.getSelectionModel().selectedIndexProperty().addListener((observable, oldValue, newValue) -> {
+            var index = newValue.intValue();
+            if (index <= 0) {
+                midiInput.closeDevice();
+                return;
+            }
+
+            try {
+                midiInput.open(devices.get(index - 1));
+            } catch (MidiUnavailableException e) {
+                System.out.println("MIDI input not available: " + e.getMessage());
+                midiChoice.getSelectionModel().select(0);
+            }
+        });
+
+        return midiChoice;
+    }
+
+    /**
+     * Adds a header information to the globals column.
+     */
+    private void addHeader() {
+        var headerLabel = new Label("JavaSynth Params");
+        headerLabel.setStyle("-fx-font-size: 14pt; -fx-font-weight: bold");
+        this.getChildren().add(headerLabel);
+    }
+
+    /**
+     * Adds the slider group with loudness, attach, sustain and pitch.
+     * Note: there is no global decay slider since the harmonics do have
+     * their own decay information.
+     */
+    private void addSliders() {
+        var grid = new GridPane();
+
+        var loudness = addSlider(grid, 1,"Loudness", 0.0, 1.0, globals.getLoudness());
+        loudness.valueProperty().addListener(value -> {
+            globals.setLoudness(loudness.getValue());
+            synthesis.publish();
+        });
+
+        var attack = addSlider(grid, 2,"Attack", 0.0, 10.0, globals.getAttack());
+        attack.valueProperty().addListener(value -> {
+            globals.setAttack(attack.getValue());
+            synthesis.publish();
+        });
+
+        var sustain = addSlider(grid, 3,"Sustain", 0.0, 10.0, globals.getSustain());
+        sustain.valueProperty().addListener(value -> {
+            globals.setSustain(sustain.getValue());
+            synthesis.publish();
+        });
+
+        var pitch = addSlider(grid, 4,"Pitch", 20.0, 4000.0, globals.getPitch());
+        pitch.valueProperty().addListener(value -> {
+            globals.setPitch(pitch.getValue());
+            synthesis.publish();
+        });
+
+        var sampleRate = new ChoiceBox<Integer>();
+        sampleRate.getItems().addAll(22050, 44100, 48000, 96000, 192000);
+        sampleRate.setValue(globals.getSampleRate());
+        sampleRate.valueProperty().addListener(value -> {
+            globals.setSampleRate(sampleRate.getValue());
+            synthesis.publish();
+        });
+        grid.add(new Label("Sample rate"), 1, 5);
+        grid.add(sampleRate, 2, 5);
+
+        var sampleFormat = new ChoiceBox<SampleFormat>();
+        sampleFormat.getItems().addAll(SampleFormat.values());
+        sampleFormat.setValue(globals.getSampleFormat());
+        sampleFormat.valueProperty().addListener(value -> {
+            globals.setSampleFormat(sampleFormat.getValue());
+            synthesis.publish();
+        });
+        grid.add(new Label("Format"), 1, 6);
+        grid.add(sampleFormat, 2, 6);
+
+        grid.setStyle("-fx-border-color: #808080; -fx-border-radius: 5px; -fx-background-color: #f0f0f0");
+        var shadow = new DropShadow(20.0, 3.0, 3.0, new Color(0.75, 1.0, 0.75, 1.0));
+        grid.setEffect(shadow);
+        grid.setHgap(25.0);
+        grid.setVgap(10.0);
+        this.getChildren().add(grid);
+    }
+
+    /**
+     * Adds one generic slider to the given grid.
+     *
+     * @param grid destination grid
+     * @param insertLine grid line number
+     * @param labelText slider name
+     * @param startValue slider start value
+     * @param endValue slider end value
+     * @param actValue slider act value
+     * @return created slider for further processing
+     */
+    private Slider addSlider(GridPane grid, int insertLine, String labelText, double startValue, double endValue, double actValue) {
+        var label = new Label(labelText);
+        grid.add(label, 1, insertLine);
+        var slider = new Slider(startValue, endValue, actValue);
+        grid.add(slider, 2, insertLine);
+        slider.setShowTickLabels(true);
+        slider.setShowTickMarks(true);
+
+        return slider;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.controls;
+
+import de.mmth.javasynth.sound.EnvelopeCurve;
+import de.mmth.javasynth.sound.Harmonic;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.VBox;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Creates a pane with all user interface elements
+ * for the settings of one harmonic.
+ * .
+ * The pane is a reusable row of the harmonics list, it can
+ * be bound to another harmonic when the list is scrolled.
+ */
+public class HarmonicParams extends Pane {
+    private final Insets stdMargin = new Insets(5.0);
+    private final Runnable onChange;
+    private final Label id = new Label();
+    private final CheckBox activate = new CheckBox("Active");
+    private final Slider loudnessSlider = new Slider(0.0, 1.0, 0.0);
+    private final Slider decaySlider = new Slider(0.01, 20.0, 0.01);
+    private final Slider attackSlider = new Slider(0.0, 5.0, 0.0);
+    private final Slider fallSlider = new Slider(0.0, 5.0, 0.0);
+    private final Slider levelSlider = new Slider(0.0, 1.0, 1.0);
+    private final ChoiceBox<EnvelopeCurve> curveChoice = new ChoiceBox<>();
+    private Harmonic harmonic;
+    private boolean binding;
+
+    /**
+     * Constructor creates the controls, they are bound
+     * to a harmonic with setHarmonic.
+     *
+     * @param onChange called after each change of the settings
+     */
+    public HarmonicParams(Runnable onChange) {
+        this.onChange = onChange;
+
+        HBox base = new HBox();
+        base.setSpacing(25.0);
+        var leftControls = addLeftControls();
+        var rightControls = addRightControls();
+        base.getChildren().addAll(leftControls, rightControls);
+        this.getChildren().add(base);
+
+        this.setStyle("-fx-border-color: #808080; -fx-border-radius: 5px; -fx-background-color: #f0f0f0");
+    }
+
+    /**
+     * Binds the controls to the given harmonic, the
+     * controls show the actual settings of the harmonic.
+     *
+     * @param harmonic harmonic settings
+     */
+    public void setHarmonic(Harmonic harmonic) {
+        this.harmonic = harmonic;
+        binding = true;
+        id.setText("Harmonic " + harmonic.getOvertoneNumber());
+        activate.setSelected(harmonic.getActive());
+        loudnessSlider.setValue(harmonic.getLoudness());
+        decaySlider.setValue(harmonic.getDecay());
+        attackSlider.setValue(harmonic.getAttack());
+        fallSlider.setValue(harmonic.getFall());
+        levelSlider.setValue(harmonic.getSustainLevel());
+        curveChoice.setValue(harmonic.getCurve());
+        binding = false;
+    }
+
+    /**
+     * Adds the left side controls like header information
+     * and switch off.
+     *
+     * @return left side node
+     */
+    private Node addLeftControls() {
+        var box = new VBox();
+        box.setSpacing(5.0);
+        activate.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (!binding) {
+                harmonic.setActive(newValue);
+                onChange.run();
+            }
+        });
+        box.getChildren().addAll(id, activate);
+        VBox.setMargin(id, stdMargin);
+        VBox.setMargin(activate, stdMargin);
+        return box;
+    }
+
+    /**
+     * Adds the right side controls - sliders with labels.
+     *
+     * @return right side controls
+     */
+    private Node addRightControls() {
+        var loudnessLabel = new Label("Loudness");
+        loudnessSlider.setShowTickLabels(true);
+        loudnessSlider.setShowTickMarks(true);
+        loudnessSlider.valueProperty().addListener(ev -> {
+            if (!binding) {
+                harmonic.setLoudness(loudnessSlider.getValue());
+                onChange.run();
+            }
+        });
+
+        var decayLabel = new Label("Decay (s)");
+        decaySlider.setShowTickLabels(true);
+        decaySlider.setShowTickMarks(true);
+        decaySlider.valueProperty().addListener(ev -> {
+            if (!binding) {
+                harmonic.setDecay(decaySlider.getValue());
+                onChange.run();
+            }
+        });
+
+        var sliders = new GridPane();
+        sliders.setHgap(25.0);
+        sliders.setVgap(10.0);
+        sliders.add(loudnessLabel, 1, 1);
+        sliders.add(loudnessSlider, 2, 1);
+        addEnvelopeSlider(sliders, "Attack (s)", attackSlider, 2, value -> harmonic.setAttack(value));
+        addEnvelopeSlider(sliders, "Fall (s)", fallSlider, 3, value -> harmonic.setFall(value));
+        addEnvelopeSlider(sliders, "Sustain level", levelSlider, 4, value -> harmonic.setSustainLevel(value));
+        sliders.add(decayLabel, 1, 5);
+        sliders.add(decaySlider, 2, 5);
+
+        curveChoice.getItems().addAll(EnvelopeCurve.values());
+        curveChoice.valueProperty().addListener(ev -> {
+            if (!binding) {
+                harmonic.setCurve(curveChoice.getValue());
+                onChange.run();
+            }
+        });
+        sliders.add(new Label("Curve"), 1, 6);
+        sliders.add(curveChoice, 2, 6);
+        return sliders;
+    }
+
+    /**
+     * Adds a slider of an envelope setting with its label.
+     *
+     * @param sliders grid of the sliders
+     * @param labelText slider name
+     * @param slider slider control
+     * @param row grid row
+     * @param setter takes over the slider value into the harmonic
+     */
+    private void addEnvelopeSlider(GridPane sliders, String labelText, Slider slider, int row, DoubleConsumer setter) {
+        slider.setShowTickLabels(true);
+        slider.setShowTickMarks(true);
+        slider.valueProperty().addListener(ev -> {
+            if (!binding) {
+                setter.accept(slider.getValue());
+                onChange.run();
+            }
+        });
+        sliders.add(new Label(labelText), 1, row);
+        sliders.add(slider, 2, row);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * JavaSynth
+ * .
+ * (c) 2024 Matthias Thiele
+ */
+package de.mmth.javasynth.controls;
+
+import de.mmth.javasynth.sound.Harmonic;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+/**
+ * Creates a scrollable list with the user interface
+ * of the given harmonics.
+ * .
+ * The list is virtualized: only the visible rows are created
+ * and reused while scrolling, so patches with thousands of
+ * harmonics stay responsive.
+ */
+public class HarmonicsPane extends Pane {
+    private static final double LIST_WIDTH = 480.0;
+    private static final double LIST_HEIGHT = 500.0;
+
+    /**
+     * Constructor, injects the harmonics array and
+     * creates the user interface for all harmonics
+     * settings.
+     *
+     * @param harmonics harmonics data
+     * @param onChange called after each change of a harmonic
+     */
+    public HarmonicsPane(Harmonic[] harmonics, Runnable onChange) {
+        var list = new ListView<Harmonic>();
+        list.getItems().addAll(harmonics);
+        list.setCellFactory(view -> new HarmonicCell(onChange));
+        list.setPrefSize(LIST_WIDTH, LIST_HEIGHT);
+
+        var shadow = new DropShadow(20.0, 3.0, 3.0, Color.LIGHTSKYBLUE);
+        list.setEffect(shadow);
+        this.getChildren().add(list);
+    }
+
+    /**
+     * List row which shows the settings of one harmonic.
+     */
+    private static class HarmonicCell extends ListCell<Harmonic> {
+        private final HarmonicParams params;
+
+        HarmonicCell(Runnable onChange) {
+            params = new HarmonicParams(onChange);
+        }
+
+        @Override
+        protected void updateItem(Harmonic item, boolean empty) {
+            super.updateItem(item, empty);
+            if (empty || (item == null)) {
+                setGraphic(null);
+            } else {
+                params.setHarmonic(item);
+                setGraphic(params);
+            }
+        }
+    }
+}
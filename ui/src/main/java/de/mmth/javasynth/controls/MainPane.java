@@ -6,6 +6,7 @@
 package de.mmth.javasynth.controls;
 
 import de.mmth.javasynth.sound.Audio;
+import de.mmth.javasynth.sound.MidiInput;
 import de.mmth.javasynth.sound.Synthesis;
 import javafx.scene.Node;
 import javafx.scene.layout.HBox;
@@ -16,6 +17,7 @@ import javafx.scene.layout.Pane;
  */
 public class MainPane extends Pane {
     private final Audio audio = new Audio();
+    private final MidiInput midiInput;
 
     /**
      * Constructor
@@ -25,11 +27,18 @@ public class MainPane extends Pane {
     public MainPane(int numberOfHarmonics) {
         var synthesis = new Synthesis();
         synthesis.init(numberOfHarmonics);
+        audio.setTelemetry(synthesis.getTelemetry());
+        midiInput = new MidiInput(synthesis, voices -> {
+            if (!audio.isStreaming(voices)) {
+                audio.streamAudio(voices);
+            }
+        });
 
         var box = new HBox();
         box.setSpacing(30);
         box.setStyle("-fx-padding: 25px;");
         box.getChildren().add(createControlSection(synthesis));
+        box.getChildren().add(createDiagnosticsSection(synthesis));
         box.getChildren().add(createParamsSection(synthesis));
         this.getChildren().add(box);
     }
@@ -38,6 +47,7 @@ public class MainPane extends Pane {
      * Called by the JavaFX runtime when the application terminates.
      */
     public void onApplicationExit() {
+        midiInput.close();
         audio.interrupt();
     }
 
@@ -49,7 +59,17 @@ public class MainPane extends Pane {
      * @return JavaFx controls bound to the harmonics data
      */
     private Node createParamsSection(Synthesis synthesis) {
-        return new HarmonicsPane(synthesis.getHarmonics());
+        return new HarmonicsPane(synthesis.getHarmonics(), synthesis::publish);
+    }
+
+    /**
+     * Creates the diagnostics view next to the global settings.
+     *
+     * @param synthesis contains the performance metrics
+     * @return JavaFx controls showing the metrics
+     */
+    private Node createDiagnosticsSection(Synthesis synthesis) {
+        return new DiagnosticsPane(synthesis.getTelemetry(), synthesis.getRenderCache());
     }
 
     /**
@@ -58,6 +78,6 @@ public class MainPane extends Pane {
      * @return JavaFx controls bound to the globals data
      */
     private Node createControlSection(Synthesis synthesis) {
-        return new GlobalParams(synthesis, audio);
+        return new GlobalParams(synthesis, audio, midiInput);
     }
 }
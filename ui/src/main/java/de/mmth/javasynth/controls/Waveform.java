@@ -0,0 +1,110 @@
+package de.mmth.javasynth.controls;
+
+import de.mmth.javasynth.sound.PeakPyramid;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.paint.Color;
+
+/**
+ * Overview of the rendered sound.
+ * .
+ * Draws the minimum/maximum envelope and the RMS value of each
+ * column from a peak pyramid, so redraws do not touch the sample
+ * data. The mouse wheel zooms around the mouse position, dragging
+ * scrolls the view.
+ */
+public class Waveform extends Canvas {
+    private static final double ZOOM_STEP = 1.25;
+    private static final double MIN_VIEW_SAMPLES = 64;
+
+    private PeakPyramid peaks;
+    private double viewStart;
+    private double viewLength;
+    private double dragX;
+
+    public Waveform(int width, int height) {
+        super();
+        this.setWidth(width);
+        this.setHeight(height);
+        this.setCache(false);
+
+        this.setOnScroll(ev -> zoom(ev.getDeltaY() > 0 ? 1.0 / ZOOM_STEP : ZOOM_STEP, ev.getX()));
+        this.setOnMousePressed(ev -> dragX = ev.getX());
+        this.setOnMouseDragged(ev -> {
+            scroll((dragX - ev.getX()) * viewLength / getWidth());
+            dragX = ev.getX();
+        });
+    }
+
+    /**
+     * Shows a new sound, the view is reset to the whole sound.
+     *
+     * @param peaks peak overview of the sound
+     */
+    public void updateView(PeakPyramid peaks) {
+        this.peaks = peaks;
+        viewStart = 0;
+        viewLength = Math.max(MIN_VIEW_SAMPLES, peaks.getSampleCount());
+        redraw();
+    }
+
+    /**
+     * Changes the visible range around the given column.
+     *
+     * @param factor new length relative to the actual length
+     * @param x column which keeps its position
+     */
+    private void zoom(double factor, double x) {
+        if (peaks == null) {
+            return;
+        }
+
+        var anchor = viewStart + x / getWidth() * viewLength;
+        var newLength = Math.max(MIN_VIEW_SAMPLES, Math.min(peaks.getSampleCount(), viewLength * factor));
+        viewStart = anchor - x / getWidth() * newLength;
+        viewLength = newLength;
+        scroll(0.0);
+    }
+
+    /**
+     * Moves the visible range, limited to the sound.
+     *
+     * @param samples distance in samples
+     */
+    private void scroll(double samples) {
+        if (peaks == null) {
+            return;
+        }
+
+        viewStart = Math.max(0.0, Math.min(peaks.getSampleCount() - viewLength, viewStart + samples));
+        redraw();
+    }
+
+    /**
+     * Draws the visible range.
+     */
+    private void redraw() {
+        var gc = this.getGraphicsContext2D();
+        gc.setFill(Color.WHITE);
+        gc.fillRect(0, 0, getWidth(), getHeight());
+
+        var width = (int) getWidth();
+        var min = new float[width];
+        var max = new float[width];
+        var rms = new float[width];
+        peaks.columns(viewStart, viewLength, width, min, max, rms);
+
+        var center = getHeight() / 2;
+        for (var column = 0; column < width; column++) {
+            gc.beginPath();
+            gc.setStroke(Color.ORANGE);
+            gc.moveTo(column, center - max[column] * center);
+            gc.lineTo(column, center - min[column] * center);
+            gc.stroke();
+            gc.beginPath();
+            gc.setStroke(Color.GREEN);
+            gc.moveTo(column, center - rms[column] * center);
+            gc.lineTo(column, center + rms[column] * center);
+            gc.stroke();
+        }
+    }
+}
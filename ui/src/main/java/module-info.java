@@ -4,8 +4,8 @@ module de.mmth.javasynth.javasynth {
 
     requires org.controlsfx.controls;
     requires com.dlsc.formsfx;
-    requires java.desktop;
+    requires de.mmth.javasynth.engine;
 
     opens de.mmth.javasynth to javafx.fxml;
     exports de.mmth.javasynth;
-}
\ No newline at end of file
+}